@@ -0,0 +1,89 @@
+/**
+ * @author Ciprian (Andy) Triculescu
+ * CS310
+ * Fall 2017
+ */
+
+package imgseg.bench;
+
+import imgseg.DisjointSets;
+import imgseg.IntDisjointSets;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Union/find throughput of the generic DisjointSets against the primitive IntDisjointSets:
+ * a random sequence of unions over n elements followed by a find on every element.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DisjointSetsBenchmark
+{
+    @Param({"65536", "1048576"})
+    public int n;
+
+    private int [ ] colors;
+    private int [ ] ops;
+    private ArrayList<Integer> data;
+
+    @Setup
+    public void setup()
+    {
+        Random rand = new Random(310);
+        colors = new int[n];
+        data = new ArrayList<Integer>(n);
+        for(int i = 0; i < n; i++)
+        {
+            colors[i] = rand.nextInt(1 << 24);
+            data.add(i);
+        }
+        ops = new int[2 * (n - 1)];
+        for(int i = 0; i < ops.length; i++)
+            ops[i] = rand.nextInt(n);
+    }
+
+    @Benchmark
+    public void intDisjointSets(Blackhole bh)
+    {
+        IntDisjointSets ds = new IntDisjointSets(colors);
+        for(int i = 0; i < ops.length; i += 2)
+        {
+            int a = ds.find(ops[i]), b = ds.find(ops[i + 1]);
+            if(a != b) ds.union(a, b);
+        }
+        for(int i = 0; i < n; i++)
+            bh.consume(ds.find(i));
+    }
+
+    @Benchmark
+    public void genericDisjointSets(Blackhole bh)
+    {
+        DisjointSets<Integer> ds = new DisjointSets<Integer>(data);
+        for(int i = 0; i < ops.length; i += 2)
+        {
+            int a = ds.find(ops[i]), b = ds.find(ops[i + 1]);
+            if(a != b) ds.union(a, b);
+        }
+        for(int i = 0; i < n; i++)
+            bh.consume(ds.find(i));
+    }
+}
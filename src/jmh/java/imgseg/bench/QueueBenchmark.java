@@ -0,0 +1,115 @@
+/**
+ * @author Ciprian (Andy) Triculescu
+ * CS310
+ * Fall 2017
+ */
+
+package imgseg.bench;
+
+import imgseg.PriorityQueue;
+import imgseg.SimilarityQueue;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Fill-then-drain cost of the textbook PriorityQueue against SimilarityQueue on the same keys,
+ * plus the keyed update path (remove + add of an existing pair) that only SimilarityQueue supports.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueueBenchmark
+{
+    @Param({"100000", "1000000"})
+    public int n;
+
+    private int [ ] distances;
+
+    /**
+     * Comparable wrapper so the textbook queue orders on the same key.
+     */
+    static final class Entry implements Comparable<Entry>
+    {
+        final int distance, p, q;
+        Entry(int distance, int p, int q) { this.distance = distance; this.p = p; this.q = q; }
+        public int compareTo(Entry other) { return Integer.compare(distance, other.distance); }
+    }
+
+    @Setup
+    public void setup()
+    {
+        Random rand = new Random(310);
+        distances = new int[n];
+        for(int i = 0; i < n; i++)
+            distances[i] = rand.nextInt(200000);
+    }
+
+    @Benchmark
+    public void priorityQueue(Blackhole bh)
+    {
+        PriorityQueue<Entry> pq = new PriorityQueue<Entry>();
+        for(int i = 0; i < n; i++)
+            pq.add(new Entry(distances[i], i, i + 1));
+        while(!pq.isEmpty())
+            bh.consume(pq.remove());
+    }
+
+    @Benchmark
+    public void similarityQueue(Blackhole bh)
+    {
+        SimilarityQueue pq = new SimilarityQueue(n);
+        for(int i = 0; i < n; i++)
+            pq.add(distances[i], i, i + 1);
+        while(!pq.isEmpty())
+        {
+            bh.consume(pq.rootDistance());
+            pq.remove();
+        }
+    }
+
+    @Benchmark
+    public void similarityQueueBulk(Blackhole bh)
+    {
+        SimilarityQueue pq = new SimilarityQueue(n);
+        for(int i = 0; i < n; i++)
+            pq.append(distances[i], i, i + 1);
+        pq.buildHeap();
+        while(!pq.isEmpty())
+        {
+            bh.consume(pq.rootDistance());
+            pq.remove();
+        }
+    }
+
+    @Benchmark
+    public void similarityQueueUpdate(Blackhole bh)
+    {
+        SimilarityQueue pq = new SimilarityQueue(n);
+        for(int i = 0; i < n; i++)
+            pq.append(distances[i], i, i + 1);
+        pq.buildHeap();
+        for(int i = 0; i < n; i++)
+        {
+            pq.remove(i, i + 1);
+            pq.add(distances[n - 1 - i], i, i + 1);
+        }
+        bh.consume(pq.rootDistance());
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * @author Ciprian (Andy) Triculescu
+ * CS310
+ * Fall 2017
+ */
+
+package imgseg.bench;
+
+import imgseg.Decomposor;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End to end Decomposor.segment(K) on synthetic images. One invocation is a whole segmentation,
+ * so this runs single shot style with few iterations; the large sizes take minutes with the greedy engine,
+ * pick a subset with e.g. -p size=256,1024.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+public class SegmentBenchmark
+{
+    @Param({"256", "1024", "4096"})
+    public int size;
+
+    @Param({"noise", "blocks", "gradient"})
+    public String kind;
+
+    @Param({"2", "10", "100"})
+    public int k;
+
+    @Param({"greedy", "rounds"})
+    public String engine;
+
+    private BufferedImage image;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        image = SyntheticImages.create(kind, size);
+    }
+
+    @Benchmark
+    public Decomposor segment()
+    {
+        Decomposor d = new Decomposor(image, "bench");
+        d.setVerbose(false);//the progress bar would be timed too
+        d.setEngine(engine.equals("rounds") ? Decomposor.Engine.ROUNDS : Decomposor.Engine.GREEDY);
+        d.segment(k);
+        return d;
+    }
+}
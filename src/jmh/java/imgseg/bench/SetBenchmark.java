@@ -0,0 +1,73 @@
+/**
+ * @author Ciprian (Andy) Triculescu
+ * CS310
+ * Fall 2017
+ */
+
+package imgseg.bench;
+
+import imgseg.Set;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Growth cost of Set: single adds from empty, and addAll of two halves.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SetBenchmark
+{
+    @Param({"10000", "1000000"})
+    public int n;
+
+    private Integer [ ] items;
+    private Set<Integer> left, right;
+
+    @Setup
+    public void setup()
+    {
+        items = new Integer[n];
+        left = new Set<Integer>();
+        right = new Set<Integer>();
+        for(int i = 0; i < n; i++)
+        {
+            items[i] = i;
+            if(i < n / 2) left.add(items[i]); else right.add(items[i]);
+        }
+    }
+
+    @Benchmark
+    public Set<Integer> add()
+    {
+        Set<Integer> s = new Set<Integer>();
+        for(int i = 0; i < n; i++)
+            s.add(items[i]);
+        return s;
+    }
+
+    @Benchmark
+    public void addAll(Blackhole bh)
+    {
+        Set<Integer> s = new Set<Integer>();
+        s.addAll(left);
+        s.addAll(right);
+        bh.consume(s.size());
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * @author Ciprian (Andy) Triculescu
+ * CS310
+ * Fall 2017
+ */
+
+package imgseg.bench;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Deterministic test images for the benchmarks, so runs on different machines segment the same pixels.
+ */
+public final class SyntheticImages
+{
+    private SyntheticImages() { }
+
+    /**
+     * Builds a size x size image of the given kind from a fixed seed.
+     * @param kind One of "noise" (uniform random colors), "blocks" (flat rectangles, many exact ties)
+     *             or "gradient" (smooth ramps with light noise, close to a photograph)
+     * @param size Width and height in pixels
+     * @return The image
+     */
+    public static BufferedImage create(String kind, int size)
+    {
+        int [ ] rgb = pixels(kind, size);
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, size, size, rgb, 0, size);
+        return image;
+    }
+
+    /**
+     * Same pixels as create, packed 0xRRGGBB row by row.
+     * @param kind See create
+     * @param size Width and height in pixels
+     * @return The packed pixels
+     */
+    public static int [ ] pixels(String kind, int size)
+    {
+        Random rand = new Random(310L * size + kind.hashCode());
+        int [ ] rgb = new int[size * size];
+        if(kind.equals("noise"))
+        {
+            for(int i = 0; i < rgb.length; i++)
+                rgb[i] = rand.nextInt(1 << 24);
+        }
+        else if(kind.equals("blocks"))
+        {
+            int block = Math.max(4, size / 32);
+            int cols = (size + block - 1) / block;
+            int [ ] palette = new int[cols * cols];
+            for(int i = 0; i < palette.length; i++)
+                palette[i] = rand.nextInt(1 << 24);
+            for(int h = 0; h < size; h++)
+                for(int w = 0; w < size; w++)
+                    rgb[h * size + w] = palette[(h / block) * cols + (w / block)];
+        }
+        else if(kind.equals("gradient"))
+        {
+            for(int h = 0; h < size; h++)
+                for(int w = 0; w < size; w++)
+                {
+                    int r = clamp(w * 255 / size + rand.nextInt(9) - 4);
+                    int g = clamp(h * 255 / size + rand.nextInt(9) - 4);
+                    int b = clamp((w + h) * 255 / (2 * size) + rand.nextInt(9) - 4);
+                    rgb[h * size + w] = (r << 16) | (g << 8) | b;
+                }
+        }
+        else
+        {
+            throw new IllegalArgumentException("! Error: Unknown image kind "+kind);
+        }
+        return rgb;
+    }
+
+    private static int clamp(int c)
+    {
+        return c < 0 ? 0 : (c > 255 ? 255 : c);
+    }
+}
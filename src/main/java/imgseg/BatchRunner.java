@@ -0,0 +1,251 @@
+/**
+ * @author Ciprian (Andy) Triculescu
+ * CS310
+ * Fall 2017
+ */
+
+package imgseg;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Segments many images in one JVM as a pipeline of three stages on separate executors: decode, segment, then recolor and encode (outputResults).
+ * Stages of different images overlap, so the disk and the cores stay busy at once. How many images are in flight is bounded twice:
+ * by a count, and by a budget of pixels, taken from the image header before the image is decoded and given back once its results are written.
+ * Override configure to set up every Decomposor the way a single run would be.
+ */
+public class BatchRunner
+{
+    /**
+     * Constructor for a batch over the given images.
+     * @param files The images to segment.
+     * @param Ks The numbers of regions to save every image at, smallest first.
+     * @param jobs The number of images segmented at the same time.
+     * @param maxPixels The most pixels in flight at once, over all images.
+     */
+    public BatchRunner(List<File> files, int[] Ks, int jobs, long maxPixels)
+    {
+      if(files.isEmpty() || Ks.length == 0 || jobs < 1 || maxPixels < 1)
+        throw new IllegalArgumentException(new String("! Error: bad batch, images="+files.size()+" K values="+Ks.length+" jobs="+jobs+" max pixels="+maxPixels));
+      this.files = files;
+      this.Ks = Ks;
+      this.jobs = jobs;
+      this.maxPixels = (int)Math.min(maxPixels, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Called on every Decomposor before it segments, e.g. to set the connectivity, engine or tiling. Does nothing by default.
+     * @param seg The decomposer of one image.
+     */
+    protected void configure(Decomposor seg)
+    {
+    }
+
+    /**
+     * Runs the whole batch and prints one line per image and a summary at the end.
+     * @return The number of images that failed.
+     */
+    public int run()
+    {
+      final ExecutorService io = Executors.newFixedThreadPool(IO_THREADS);
+      final ExecutorService cpu = Executors.newFixedThreadPool(jobs);
+      final Semaphore inFlight = new Semaphore(2*jobs+IO_THREADS);//enough to keep every stage fed, no more
+      final Semaphore pixels = new Semaphore(maxPixels);
+      final AtomicInteger failed = new AtomicInteger();
+      final AtomicLong[] stageNanos = {new AtomicLong(), new AtomicLong(), new AtomicLong()};
+      final AtomicLong maxLatency = new AtomicLong();
+      long start = System.nanoTime();
+      try{
+        for(final File file: files){
+          inFlight.acquire();
+          final int permits = acquirePixels(pixels, file);//admitted here rather than in a stage, so no stage ever waits on a later one
+          final long admitted = System.nanoTime();
+          final long[] times = new long[3];//decode, segment and encode nanoseconds of this image
+          CompletableFuture.supplyAsync(new Supplier<Decomposor>(){
+            public Decomposor get() {
+              long t = System.nanoTime();
+              BufferedImage image = read(file);
+              String name = file.getPath();
+              int dot = name.lastIndexOf('.');
+              Decomposor seg = new Decomposor(image, (dot > name.lastIndexOf(File.separatorChar)) ? name.substring(0, dot) : name);
+              seg.setVerbose(false);
+              configure(seg);
+              times[0] = System.nanoTime()-t;
+              return seg;
+            }
+          }, io).thenApplyAsync(new Function<Decomposor, Decomposor>(){
+            public Decomposor apply(Decomposor seg) {
+              long t = System.nanoTime();
+              seg.segment(Ks[0]);
+              times[1] = System.nanoTime()-t;
+              return seg;
+            }
+          }, cpu).thenAcceptAsync(new Consumer<Decomposor>(){
+            public void accept(Decomposor seg) {
+              long t = System.nanoTime();
+              for(int i=Ks.length-1; i>=0; i--){
+                seg.cut(Ks[i]);
+                seg.outputResults(Ks[i]);
+              }
+              times[2] = System.nanoTime()-t;
+              System.err.println("- "+file+": "+seg.image.getWidth()+"x"+seg.image.getHeight()
+                +" decode="+times[0]/1000000+"ms segment="+times[1]/1000000+"ms encode="+times[2]/1000000+"ms");
+            }
+          }, io).whenComplete(new BiConsumer<Void, Throwable>(){
+            public void accept(Void done, Throwable e) {
+              if(e != null){
+                failed.incrementAndGet();
+                System.err.println("! Error: Failed to segment "+file+", error msg: "+(e.getCause() != null ? e.getCause() : e));
+              }
+              for(int i=0; i<3; i++)
+                stageNanos[i].addAndGet(times[i]);
+              long latency = System.nanoTime()-admitted, max = maxLatency.get();
+              while(latency > max && !maxLatency.compareAndSet(max, latency))
+                max = maxLatency.get();
+              pixels.release(permits);
+              inFlight.release();
+            }
+          });
+        }
+        inFlight.acquire(2*jobs+IO_THREADS);//every image has finished once all the permits are back
+      }
+      catch(InterruptedException e){
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("! Error: batch was interrupted", e);
+      }
+      finally{
+        io.shutdown();
+        cpu.shutdown();
+      }
+      long wall = System.nanoTime()-start;
+      System.err.println("- Batch: "+files.size()+" images, "+failed.get()+" failed, "+wall/1000000+"ms wall, "
+        +String.format("%.2f", files.size()*1e9/wall)+" images/s, total decode="+stageNanos[0].get()/1000000
+        +"ms segment="+stageNanos[1].get()/1000000+"ms encode="+stageNanos[2].get()/1000000+"ms, max latency="+maxLatency.get()/1000000+"ms");
+      return failed.get();
+    }
+
+    /**
+     * Lists the images of a batch: every readable image in a directory, skipping earlier results, or every line of a text file.
+     * @param path A directory, or a file with one image path per line.
+     * @return The images, sorted by name for a directory.
+     * @throws IllegalArgumentException if path cannot be read.
+     */
+    public static List<File> listImages(String path)
+    {
+      File source = new File(path);
+      ArrayList<File> files = new ArrayList<File>();
+      if(source.isDirectory()){
+        List<String> suffixes = Arrays.asList(ImageIO.getReaderFileSuffixes());
+        File[] entries = source.listFiles();
+        if(entries == null)
+          throw new IllegalArgumentException("! Error: Failed to list "+path);
+        Arrays.sort(entries);
+        for(File entry: entries){
+          String name = entry.getName();
+          int dot = name.lastIndexOf('.');
+          if(entry.isFile() && dot > 0 && suffixes.contains(name.substring(dot+1).toLowerCase()) && !name.matches(".*_seg_\\d+\\.png"))
+            files.add(entry);
+        }
+        return files;
+      }
+      try(BufferedReader in = new BufferedReader(new FileReader(source)))
+      {
+        for(String line = in.readLine(); line != null; line = in.readLine())
+          if(!line.trim().isEmpty())
+            files.add(new File(line.trim()));
+      }
+      catch(IOException e)
+      {
+        throw new IllegalArgumentException("! Error: Failed to read "+path+", error msg: "+e);
+      }
+      return files;
+    }
+
+    /**
+     * Takes as many pixel permits as the image has pixels, reading only its header, waiting until enough images have finished.
+     * An image that cannot be read takes one permit and fails in the decode stage.
+     * An image bigger than the whole budget takes all of it, so it runs alone rather than never.
+     * @return The number of permits taken.
+     */
+    private int acquirePixels(Semaphore pixels, File file) throws InterruptedException
+    {
+      long size = 0;
+      try(ImageInputStream in = ImageIO.createImageInputStream(file))
+      {
+        Iterator<ImageReader> readers = (in == null) ? null : ImageIO.getImageReaders(in);
+        if(readers != null && readers.hasNext()){
+          ImageReader reader = readers.next();
+          reader.setInput(in);
+          size = (long)reader.getWidth(0)*reader.getHeight(0);
+          reader.dispose();
+        }
+      }
+      catch(IOException e)
+      {
+        size = 0;//read fails again below, with the error message
+      }
+      int permits = (int)Math.max(1, Math.min(size, maxPixels));
+      pixels.acquire(permits);
+      return permits;
+    }
+
+    /**
+     * Decodes an image.
+     * @throws IllegalStateException if it is not a readable image.
+     */
+    private static BufferedImage read(File file)
+    {
+      try{
+        BufferedImage image = ImageIO.read(file);
+        if(image == null)
+          throw new IllegalStateException("! Error: not an image");
+        return image;
+      }
+      catch(IOException e){
+        throw new IllegalStateException("! Error: Failed to read "+file, e);
+      }
+    }
+
+    /**
+     * Number of threads decoding and encoding. JDK 17 has no virtual threads, and a few platform threads keep PNG I/O ahead of segmentation.
+     */
+    private static final int IO_THREADS = 4;
+    /**
+     * The images of the batch.
+     */
+    private final List<File> files;
+    /**
+     * The numbers of regions to save every image at, smallest first.
+     */
+    private final int[] Ks;
+    /**
+     * The number of images segmented at the same time.
+     */
+    private final int jobs;
+    /**
+     * The most pixels in flight at once.
+     */
+    private final int maxPixels;
+}
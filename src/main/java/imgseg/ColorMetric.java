@@ -0,0 +1,224 @@
+/**
+ * @author Ciprian (Andy) Triculescu
+ * CS310
+ * Fall 2017
+ */
+
+package imgseg;
+
+/**
+ * How far apart colors are. Every metric maps a color to three 8 bit channels, packed like 0xRRGGBB, in which the squared
+ * Euclidean distance is the distance it stands for: plain RGB, CIELAB (perceptual) or RGB with a weight per channel.
+ * The mapping is applied once per image, with lookup tables for the costly parts of CIELAB, and the disjoint sets keep
+ * their moments in the mapped channels, so the closed form distance between regions costs the same for every metric.
+ * pairCosts scores a run of pixel pairs at once, with the jdk.incubator.vector API when that module is present
+ * (run with --add-modules jdk.incubator.vector) and a scalar loop otherwise.
+ */
+public abstract class ColorMetric
+{
+    /**
+     * @param rgb A packed 0xRRGGBB color.
+     * @return Its packed channels under this metric.
+     */
+    public abstract int toChannels(int rgb);
+
+    /**
+     * The inverse of toChannels, up to rounding, used to turn the average channels of a region back into a color.
+     * @param channels Packed channels under this metric.
+     * @return The packed 0xRRGGBB color they stand for.
+     */
+    public abstract int toRGB(int channels);
+
+    /**
+     * Maps every color of an image.
+     * @param rgb The packed 0xRRGGBB color of every pixel.
+     * @return The packed channels of every pixel, possibly rgb itself when the metric does not change colors.
+     */
+    public int[] transform(int[] rgb)
+    {
+      int[] channels = new int[rgb.length];
+      for(int id=0; id<rgb.length; id++)
+        channels[id] = toChannels(rgb[id]&0xffffff);
+      return channels;
+    }
+
+    /**
+     * Scores count pixel pairs at once: out[i] is the distance between the single pixels from+i and from+i+offset, which is
+     * what Decomposor.getSimilarity gives for two one-pixel regions: per channel (x-c)^2+(y-c)^2 with c the truncated average of x and y.
+     * @param channels The packed channels of every pixel.
+     * @param from The first pixel of the first pair.
+     * @param offset How far the second pixel of a pair is from the first.
+     * @param count The number of pairs.
+     * @param out Where to put the distances, from index 0.
+     */
+    public final void pairCosts(int[] channels, int from, int offset, int count, int[] out)
+    {
+      if(VECTOR)
+        VectorKernels.pairCosts(channels, from, offset, count, out);
+      else
+        for(int i=0; i<count; i++)
+          out[i] = pairCost(channels[from+i], channels[from+i+offset]);
+    }
+
+    /**
+     * The distance between two single pixels, see pairCosts.
+     * @param a The packed channels of the first pixel.
+     * @param b The packed channels of the second pixel.
+     * @return The distance.
+     */
+    static int pairCost(int a, int b)
+    {
+      int sum = 0;
+      for(int shift=0; shift<=16; shift+=8){
+        int x = (a>>>shift)&0xff, y = (b>>>shift)&0xff, c = (x+y)>>1;
+        sum += (x-c)*(x-c)+(y-c)*(y-c);
+      }
+      return sum;
+    }
+
+    /**
+     * Makes a metric from its name: rgb, lab, or weighted:r,g,b with three positive weights.
+     * @param spec The name.
+     * @return The metric.
+     * @throws IllegalArgumentException if spec is not one of them.
+     */
+    public static ColorMetric parse(String spec)
+    {
+      if(spec.equals("rgb"))
+        return RGB;
+      if(spec.equals("lab"))
+        return LAB;
+      if(spec.startsWith("weighted:")){
+        String[] weights = spec.substring(9).split(",");
+        if(weights.length == 3){
+          try
+          {
+            return weighted(Double.parseDouble(weights[0]), Double.parseDouble(weights[1]), Double.parseDouble(weights[2]));
+          }
+          catch(NumberFormatException e)
+          {
+            //reported below
+          }
+        }
+      }
+      throw new IllegalArgumentException("! Error: color metric should be rgb, lab or weighted:r,g,b, current metric="+spec);
+    }
+
+    /**
+     * Squared distance in RGB, the default. Colors are used as they are.
+     */
+    public static final ColorMetric RGB = new ColorMetric(){
+      public int toChannels(int rgb) { return rgb; }
+      public int toRGB(int channels) { return channels; }
+      public int[] transform(int[] rgb) { return rgb; }
+      public String toString() { return "rgb"; }
+    };
+
+    /**
+     * Squared distance in CIELAB (D65), which follows perceived color differences far better than RGB. L is scaled to 0..255 and a and b
+     * are offset by 128, the usual 8 bit encoding. The sRGB decoding and the cube root go through lookup tables.
+     */
+    public static final ColorMetric LAB = new ColorMetric(){
+      public int toChannels(int rgb)
+      {
+        double r = LINEAR[(rgb>>16)&0xff], g = LINEAR[(rgb>>8)&0xff], b = LINEAR[rgb&0xff];
+        double fx = cubeRoot((0.4124564*r+0.3575761*g+0.1804375*b)/0.95047);
+        double fy = cubeRoot(0.2126729*r+0.7151522*g+0.0721750*b);
+        double fz = cubeRoot((0.0193339*r+0.1191920*g+0.9503041*b)/1.08883);
+        return clamp((116*fy-16)*2.55)<<16 | clamp(500*(fx-fy)+128)<<8 | clamp(200*(fy-fz)+128);
+      }
+      public int toRGB(int channels)
+      {
+        double fy = (((channels>>16)&0xff)/2.55+16)/116;
+        double fx = fy+(((channels>>8)&0xff)-128)/500.0, fz = fy-((channels&0xff)-128)/200.0;
+        double x = 0.95047*cube(fx), y = cube(fy), z = 1.08883*cube(fz);
+        return gamma(3.2404542*x-1.5371385*y-0.4985314*z)<<16 | gamma(-0.9692660*x+1.8760108*y+0.0415560*z)<<8 | gamma(0.0556434*x-0.2040259*y+1.0572252*z);
+      }
+      public String toString() { return "lab"; }
+    };
+
+    /**
+     * Squared distance in RGB with a weight per channel: the distance is the sum of (weight*difference)^2. The channels are
+     * scaled by their weight over the largest one, so the most heavily weighted channel keeps its full 8 bits.
+     * @param red The weight of red.
+     * @param green The weight of green.
+     * @param blue The weight of blue.
+     * @return The metric.
+     * @throws IllegalArgumentException if a weight is not positive.
+     */
+    public static ColorMetric weighted(final double red, final double green, final double blue)
+    {
+      if(!(red > 0 && green > 0 && blue > 0))
+        throw new IllegalArgumentException("! Error: weights should be positive, current weights="+red+","+green+","+blue);
+      double max = Math.max(red, Math.max(green, blue));
+      final double[] scale = {red/max, green/max, blue/max};
+      final int[][] table = new int[3][256];
+      for(int c=0; c<3; c++)
+        for(int v=0; v<256; v++)
+          table[c][v] = (int)Math.round(v*scale[c]);
+      return new ColorMetric(){
+        public int toChannels(int rgb)
+        {
+          return table[0][(rgb>>16)&0xff]<<16 | table[1][(rgb>>8)&0xff]<<8 | table[2][rgb&0xff];
+        }
+        public int toRGB(int channels)
+        {
+          return clamp(((channels>>16)&0xff)/scale[0])<<16 | clamp(((channels>>8)&0xff)/scale[1])<<8 | clamp((channels&0xff)/scale[2]);
+        }
+        public String toString() { return "weighted:"+red+","+green+","+blue; }
+      };
+    }
+
+    private static int clamp(double v)
+    {
+      return (int)Math.max(0, Math.min(255, Math.round(v)));
+    }
+
+    /**
+     * The CIELAB f(t) through CUBE_ROOT, for t in 0..1.
+     */
+    private static double cubeRoot(double t)
+    {
+      return CUBE_ROOT[(int)(Math.max(0, Math.min(1, t))*CUBE_STEPS+0.5)];
+    }
+
+    /**
+     * The inverse of the CIELAB f(t).
+     */
+    private static double cube(double f)
+    {
+      return (f > 6.0/29) ? f*f*f : (f-16.0/116)/7.787;
+    }
+
+    /**
+     * Encodes a linear channel as sRGB, 0..255.
+     */
+    private static int gamma(double v)
+    {
+      v = Math.max(0, Math.min(1, v));
+      return clamp(255*((v <= 0.0031308) ? 12.92*v : 1.055*Math.pow(v, 1/2.4)-0.055));
+    }
+
+    /**
+     * sRGB 0..255 decoded to linear 0..1, and the CIELAB f(t) sampled at CUBE_STEPS+1 points of 0..1.
+     */
+    private static final double[] LINEAR = new double[256];
+    private static final int CUBE_STEPS = 1<<14;
+    private static final double[] CUBE_ROOT = new double[CUBE_STEPS+1];
+    static
+    {
+      for(int v=0; v<256; v++){
+        double c = v/255.0;
+        LINEAR[v] = (c <= 0.04045) ? c/12.92 : Math.pow((c+0.055)/1.055, 2.4);
+      }
+      for(int i=0; i<=CUBE_STEPS; i++){
+        double t = (double)i/CUBE_STEPS;
+        CUBE_ROOT[i] = (t > 0.008856) ? Math.cbrt(t) : 7.787*t+16.0/116;
+      }
+    }
+
+    /**
+     * Whether the vector API is there to use.
+     */
+    private static final boolean VECTOR = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+}
@@ -0,0 +1,1575 @@
+/**
+ * @author Ciprian (Andy) Triculescu
+ * CS310
+ * Fall 2017
+ */
+
+package imgseg;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import javax.imageio.ImageIO;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+
+import javax.swing.JPanel;
+
+/**
+ * This class uses a disjoint set of pixels to reduce the amount of colors in an image to a specified amount. 
+ */
+public class Decomposor extends JPanel
+{
+    /**
+     * This method returns a similarity between the pixels at root1 and root2 in the disjoint set ds. 
+     * Uses a pre-determined algorithm to get the average color of the two pixels, summing the total difference in the sets. 
+     * The sum is taken in closed form from the color moments kept at the two roots, so it runs in constant time
+     * instead of walking every pixel of both regions: sum((x-c)^2) = sum(x^2) - 2c*sum(x) + n*c^2 for each channel.
+     * @param ds The disjoint set. 
+     * @param root1 The first root to compare
+     * @param root2 The second root to compare
+     * @return The similarity (distance) between the two roots, smaller is more similar. 
+     */
+    private static int getSimilarity(IntDisjointSets ds, int root1, int root2)
+    {
+      long n1 = ds.getSize(root1);
+      long n2 = ds.getSize(root2);
+      long sumdiff = 0;
+      for(int channel=0; channel<3; channel++){
+        long sum1 = ds.getSum(root1, channel);
+        long sum2 = ds.getSum(root2, channel);
+        long c = ((sum1/n1)*n1 + (sum2/n2)*n2)/(n1+n2); //same truncation as averaging each region first
+        long sum = sum1 + sum2;
+        long sumsq = ds.getSumOfSquares(root1, channel) + ds.getSumOfSquares(root2, channel);
+        sumdiff += sumsq - 2*c*sum + (n1+n2)*c*c;
+      }
+      return (int)Math.min(sumdiff, Integer.MAX_VALUE); //large regions saturate instead of wrapping around
+    }
+    /**
+     * Segment is the meat of the decomposer and the project due to everything culminating inside of it. 
+     * First, the disjoint set ds is created from the data extracted from the image. Then the priorityqueue is filled with one similarity per pair of neighboring pixels,
+     * scored in parallel bands of rows and heapified at once. 
+     * Then, the program iterates until only K regions are left in the disjoint set ds, printing progress along the way. 
+     * The queue holds exactly one similarity for every pair of adjacent regions, keyed by their roots, so the most similar pair removed from it is always
+     * two live roots with an up to date distance, and they are unioned right away. After a union, the similarities of the absorbed root are dropped and
+     * the similarity of the new root with every neighboring region is updated in place. The neighboring regions come from a region adjacency
+     * graph that is merged along with the disjoint set, so they cost the number of neighbors rather than a scan of the whole region. 
+     * If tiling is on (see setTiling) and the image is bigger than one tile, the tiles are first segmented in parallel down to their own
+     * region budget, and the merge above then runs over the regions the tiles left, across the tile boundaries, down to K. 
+     * With the ROUNDS engine (see setEngine) the merge runs in parallel rounds instead of one pair at a time. 
+     * With a pyramid (see setPyramid) the merge instead starts from the regions of a downscaled copy of the image, projected back up,
+     * so only the pixels along their boundaries start out on their own. 
+     * Every union is recorded in a MergeHistory, so afterwards cut can go back to any number of regions between K and the number of pixels without merging again. 
+     * With a cache (see setCache) a result already in it is read back instead, and a new one is added to it.
+     * @param K The number of regions to reduce the disjoint set of the image to. 
+     */
+    public void segment(int K) //K is the number of desired segments
+    {
+      if(K<2)
+          throw new IllegalArgumentException(new String("! Error: K should be greater than 1, current K="+K));
+      stopped = false;
+      mergeCost = 0;
+      if(cache != null && restore(K))
+        return;
+      merge(K);
+      if(cache != null && !stopped)//a stopped run is not the K region result
+        store(K);
+    }
+
+    /**
+     * Like segment, but stops early when the time budget runs out or cancel is set, whichever comes first, leaving the regions
+     * merged so far: outputResults, writeResults and getError then work on that partial result, and getNumRegions and
+     * getMergeCost say how far it got. Both are checked every STOP_CHECK merges (every round with the ROUNDS engine), so stopping
+     * is prompt; the pixel pass of a partition and the initial edges are not interrupted, but nothing is merged after them.
+     * @param K The number of regions to reduce the disjoint set of the image to.
+     * @param budgetMillis The longest to spend, in milliseconds.
+     * @param cancel Set to stop from another thread, or null.
+     * @return Whether the merge got to K regions (or ran out of adjacent regions), false if it was stopped.
+     * @throws IllegalArgumentException if K is less than 2 or budgetMillis is negative.
+     */
+    public boolean segment(int K, long budgetMillis, AtomicBoolean cancel)
+    {
+      if(budgetMillis < 0)
+        throw new IllegalArgumentException(new String("! Error: time budget should not be negative, current budget="+budgetMillis));
+      this.deadline = System.nanoTime()+TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+      this.cancel = cancel;
+      this.bounded = true;
+      try
+      {
+        segment(K);
+        return !stopped;
+      }
+      finally
+      {
+        this.bounded = false;
+        this.cancel = null;
+      }
+    }
+
+    /**
+     * Segments the next frame of a sequence, starting from the result of the previous one instead of from single pixels.
+     * The frames are compared in frameBlock by frameBlock blocks: a block is changed if any pixel in it differs by more than
+     * frameTolerance in a channel (see setFrameDiff). Regions of the previous frame that touch no changed block are kept as they are;
+     * the pixels of changed blocks start on their own, and so do small regions touching them, which are dissolved whole. A larger region
+     * that loses pixels keeps the rest, split into its connected pieces. The merge then starts from the kept regions and the freed pixels
+     * instead of from every pixel, so the number of merges grows with the amount of change rather than with the resolution. Everything else
+     * is still linear in the pixels: the block diff, the rebuild of the regions, and the region graph and queue, which hold every region,
+     * kept ones included, and are built by a scan over every pixel pair. The result cache is not used.
+     * @param K The number of regions to reduce the disjoint set of the image to.
+     * @param previous The decomposer of the previous frame, segmented and the same size as this one.
+     * @throws IllegalArgumentException if K is less than 2, or previous is the wrong size or not segmented.
+     */
+    public void segment(int K, Decomposor previous)
+    {
+      if(K<2)
+          throw new IllegalArgumentException(new String("! Error: K should be greater than 1, current K="+K));
+      if(previous.ds == null || previous.pixels.length != pixels.length || previous.image.getWidth() != image.getWidth())
+        throw new IllegalArgumentException("! Error: the previous frame should be segmented and "+image.getWidth()+"x"+image.getHeight());
+      stopped = false;
+      mergeCost = 0;
+      this.previous = previous;
+      try
+      {
+        merge(K);
+      }
+      finally
+      {
+        this.previous = null;
+      }
+    }
+
+    /**
+     * Sets how segment(int, Decomposor) finds what changed between frames.
+     * @param blockSize The width and height of a block, 16 by default.
+     * @param tolerance The largest per channel difference that does not count as a change, 0 (the default) to 255.
+     * @throws IllegalArgumentException if blockSize is less than 1 or tolerance is out of range.
+     */
+    public void setFrameDiff(int blockSize, int tolerance)
+    {
+      if(blockSize < 1 || tolerance < 0 || tolerance > 255)
+        throw new IllegalArgumentException(new String("! Error: bad frame diff, block size="+blockSize+" tolerance="+tolerance));
+      this.frameBlock = blockSize;
+      this.frameTolerance = tolerance;
+    }
+
+    /**
+     * @return The number of pixels the last segment(int, Decomposor) started on their own, the part of the frame it merged again.
+     */
+    public int getFreedPixels()
+    {
+      return freedPixels;
+    }
+
+    /**
+     * The warm start of segment(int, Decomposor): diffs the frames block by block, and rebuilds the regions of the previous frame
+     * in a new disjoint set over the colors of this one, leaving out the pixels of changed blocks and the small regions touching them.
+     * A region is rebuilt by joining its kept pixels to their kept neighbors in the same region, so a region cut in two by freed pixels
+     * comes back as two regions rather than one that is not connected.
+     * @param old The colors of the previous frame.
+     * @param before The disjoint set of the previous frame.
+     * @return The disjoint set of all pixels, partitioned into the kept regions and single freed pixels.
+     */
+    private IntDisjointSets warmStart(int[] old, IntDisjointSets before)
+    {
+      int width = this.image.getWidth();
+      int height = this.image.getHeight();
+      int n = pixels.length;
+      int across = (width+frameBlock-1)/frameBlock;
+      boolean[] changed = new boolean[across*((height+frameBlock-1)/frameBlock)];
+      for(int id=0; id<n; id++){
+        int block = (id/width/frameBlock)*across+(id%width)/frameBlock;
+        if(changed[block]) continue;
+        int c1 = pixels[id], c2 = old[id];
+        if(Math.abs(((c1>>16)&0xff)-((c2>>16)&0xff)) > frameTolerance || Math.abs(((c1>>8)&0xff)-((c2>>8)&0xff)) > frameTolerance
+           || Math.abs((c1&0xff)-(c2&0xff)) > frameTolerance)
+          changed[block] = true;
+      }
+      boolean[] touched = new boolean[n];//by root of the previous frame
+      int[] rootBefore = new int[n];
+      for(int id=0; id<n; id++){
+        rootBefore[id] = before.find(id);
+        if(changed[(id/width/frameBlock)*across+(id%width)/frameBlock])
+          touched[rootBefore[id]] = true;
+      }
+      boolean[] free = new boolean[n];
+      freedPixels = 0;
+      for(int id=0; id<n; id++){
+        int root = rootBefore[id];
+        free[id] = changed[(id/width/frameBlock)*across+(id%width)/frameBlock]
+                   || (touched[root] && before.getSize(root) <= DISSOLVE_BLOCKS*frameBlock*frameBlock);
+        if(free[id])
+          freedPixels++;
+      }
+      IntDisjointSets ds = new IntDisjointSets(channels());
+      for(int id=0; id<n; id++){
+        if(free[id]) continue;
+        int w = id%width, h = id/width;
+        for(int k=0; k<connectivity/2; k++){
+          int nw = w+FORWARD_DW[k], nh = h+FORWARD_DH[k];
+          if(nw<0 || nw>=width || nh>=height) continue;
+          int nid = width*nh+nw;
+          if(free[nid] || rootBefore[nid] != rootBefore[id]) continue;
+          int a = ds.find(id), b = ds.find(nid);
+          if(a == b) continue;
+          history.add(a, b, -1);
+          ds.union(a, b);
+        }
+      }
+      metrics.scanned(4L*n);//diff, find the touched regions, free, rebuild
+      return ds;
+    }
+
+    /**
+     * Checks the time budget and the cancel flag of a bounded segment.
+     * @return Whether the merge should stop.
+     */
+    private boolean shouldStop()
+    {
+      if(!stopped && bounded && ((cancel != null && cancel.get()) || System.nanoTime()-deadline >= 0))
+        stopped = true;
+      return stopped;
+    }
+
+    /**
+     * @return The number of regions the image is in right now.
+     */
+    public int getNumRegions()
+    {
+      return ds.getNumSets();
+    }
+
+    /**
+     * Returns how far the merge got: the distance (see getSimilarity) of the last pair of regions merged, which grows as the merge goes on.
+     * @return The distance, 0 if nothing has been merged past the partition.
+     */
+    public int getMergeCost()
+    {
+      return mergeCost;
+    }
+
+    /**
+     * The body of segment, without the cache.
+     * @param K The number of regions to reduce the disjoint set of the image to.
+     */
+    private void merge(int K)
+    {
+      int width = this.image.getWidth();
+      int height = this.image.getHeight();
+      boolean tiled = tileSize > 0 && (width > tileSize || height > tileSize);
+      boolean pyramid = !tiled && pyramidLevels > 0 && width >= 2*MIN_LEVEL_SIZE && height >= 2*MIN_LEVEL_SIZE;
+      boolean warm = previous != null;
+      boolean partitioned = warm || tiled || pyramid || premergeTolerance >= 0;
+      history = new MergeHistory(pixels.length);
+      channels();//mapped here, before any worker thread reads them
+      if(partitioned){
+        metrics.begin(SegmentationMetrics.Phase.PARTITION);
+        if(warm)
+          ds = warmStart(previous.pixels, previous.ds);
+        else if(tiled)
+          ds = segmentTiles(K);
+        else if(pyramid)
+          ds = refine(channels(), width, height, pyramidLevels, PYRAMID_OVERSEGMENT*K, history);
+        else
+          ds = premerge(K);
+        metrics.checkpoint(ds.getNumSets(), null);
+        metrics.end();
+        if(shouldStop()){
+          replayed = history.size();
+          metrics.commitRun();
+          return;
+        }
+        if(!warm && !tiled && !pyramid && premergeTolerance == 0 && ds.getNumSets() > pixels.length-pixels.length/PREMERGE_MIN_GAIN){
+          partitioned = false;//joined too few pixels to pay for seeding the queue one pixel pair at a time, so start over in parallel
+          history = new MergeHistory(pixels.length);
+        }
+      }
+      metrics.begin(SegmentationMetrics.Phase.EDGES);
+      if(!partitioned)
+        ds = new IntDisjointSets(channels());
+      RegionGraph graph = new RegionGraph(ds, width, height, connectivity);
+      if(engine == Engine.ROUNDS){
+        if(partitioned)
+          seedFromPartition(ds, channels(), width, height, null, graph);
+        metrics.end();
+        metrics.begin(SegmentationMetrics.Phase.MERGE);
+        mergeInRounds(ds, graph, K);
+        replayed = history.size();
+        metrics.checkpoint(ds.getNumSets(), null);
+        metrics.end();
+        metrics.commitRun();
+        return;
+      }
+      SimilarityQueue pq;
+      if(partitioned){
+        pq = new SimilarityQueue(4*ds.getNumSets());
+        seedFromPartition(ds, channels(), width, height, pq, graph);
+      }
+      else{
+        pq = new SimilarityQueue((connectivity/2)*pixels.length);
+        int bands = (height+ROWS_PER_TASK-1)/ROWS_PER_TASK;
+        EdgeBuffer[] edges = new EdgeBuffer[bands];
+        ForkJoinPool.commonPool().invoke(new EdgeTask(edges, 0, bands));//score the pixel pairs band by band in parallel
+        for(EdgeBuffer band:edges)
+          band.drainTo(pq);
+        pq.buildHeap();//heapify all the initial similarities at once in linear time
+      }
+      metrics.checkpoint(ds.getNumSets(), pq);
+      metrics.end();
+      metrics.begin(SegmentationMetrics.Phase.MERGE);
+      mergeRegions(ds, pq, graph, K, history);
+      replayed = history.size();
+      metrics.checkpoint(ds.getNumSets(), pq);
+      metrics.end();
+      metrics.commitRun();
+    }
+
+    /**
+     * The greedy merge loop: unions the most similar pair of adjacent regions until only K regions are left in ds.
+     * @param ds The disjoint set to merge in.
+     * @param pq The queue with one similarity per pair of adjacent regions of ds.
+     * @param graph The region adjacency graph of ds.
+     * @param K The number of regions to stop at.
+     * @param history Where to record every union, or null to neither record nor print progress (the merges inside a tile).
+     */
+    private void mergeRegions(IntDisjointSets ds, SimilarityQueue pq, RegionGraph graph, int K, MergeHistory history)
+    {
+      boolean report = history != null;
+      int iter = 0;//number of iterations to update on progress
+      long pops = 0, stale = 0, similarities = 0;//counted here and handed to metrics once
+      while(ds.getNumSets()>K && !pq.isEmpty()){
+        if((pops&(STOP_CHECK-1)) == 0 && shouldStop())
+          break;
+        if(report && iter == 500){
+          if(verbose)
+            tell_progress(K);
+          metrics.checkpoint(ds.getNumSets(), pq);
+          iter = 0;//reset the iterations
+        }
+        iter++;
+        pops++;
+        int p = pq.rootP();//get the most similar pair of regions from the pq, both are always roots
+        int q = pq.rootQ();
+        if(report){
+          history.add(p, q, pq.rootDistance());
+          mergeCost = pq.rootDistance();
+        }
+        pq.remove();
+        int nr = ds.union(p,q);
+        int gone = (nr == p) ? q : p;
+        int [] nneighbors = graph.merge(nr,gone);//the regions around the merged region
+        for(int nneighbor:nneighbors){
+          if(pq.remove(gone,nneighbor)) stale++;
+          pq.add(getSimilarity(ds,nr,nneighbor),nr,nneighbor);
+        }
+        similarities += nneighbors.length;
+      }
+      metrics.count(pops, pops, stale, similarities);
+    }
+
+    /**
+     * The alternative merge engine: merges in rounds, Boruvka style, until only K regions are left in ds.
+     * In every round each region finds its most similar neighbor by getSimilarity, in parallel. These candidate pairs are taken from the most similar up,
+     * skipping any pair that touches a region already merging this round, and never more than it takes to reach K. The accepted unions touch
+     * distinct regions, so they are all applied in parallel; the region adjacency graph is then updated.
+     * @param ds The disjoint set to merge in.
+     * @param graph The region adjacency graph of ds.
+     * @param K The number of regions to stop at.
+     */
+    private void mergeInRounds(final IntDisjointSets ds, final RegionGraph graph, int K)
+    {
+      int count = 0;
+      int[] roots = new int[ds.getNumSets()];
+      for(int id=0; id<pixels.length; id++)
+        if(ds.find(id) == id)
+          roots[count++] = id;
+      boolean[] merging = new boolean[pixels.length];
+      while(ds.getNumSets()>K && !shouldStop()){
+        if(verbose)
+          tell_progress(K);
+        final int[] live = roots;
+        final int[] best = new int[count];
+        final long[] order = new long[count];//distance in the high half, index into live in the low half
+        IntStream.range(0, count).parallel().forEach(new IntConsumer(){
+          public void accept(int i) {
+            int bestdist = Integer.MAX_VALUE;
+            best[i] = -1;
+            int[] neighbors = graph.getNeighbors(live[i]);
+            metrics.count(0, 0, 0, neighbors.length);
+            for(int n: neighbors){
+              int dist = getSimilarity(ds, live[i], n);
+              if(best[i] < 0 || dist < bestdist || (dist == bestdist && n < best[i])){
+                bestdist = dist;
+                best[i] = n;
+              }
+            }
+            order[i] = ((long)bestdist<<32)|i;
+          }
+        });
+        Arrays.parallelSort(order);
+        int budget = ds.getNumSets()-K;
+        int[] a = new int[Math.min(budget, count)];
+        int[] b = new int[a.length];
+        int[] dist = new int[a.length];
+        int merges = 0;
+        for(int k=0; k<count && merges<budget; k++){
+          int i = (int)order[k];
+          int p = live[i], q = best[i];
+          if(q < 0 || merging[p] || merging[q]) continue;
+          merging[p] = merging[q] = true;
+          a[merges] = p;
+          b[merges] = q;
+          dist[merges] = (int)(order[k]>>>32);
+          merges++;
+        }
+        if(merges == 0)
+          break;//no region has a neighbor left
+        int[] nr = ds.unionAll(a, b, merges);
+        mergeCost = dist[merges-1];//taken from the most similar up
+        metrics.count(merges, 0, 0, 0);
+        metrics.checkpoint(ds.getNumSets(), null);
+        for(int k=0; k<merges; k++){
+          history.add(a[k], b[k], dist[k]);//the pairs of a round share no roots, so replaying them one by one gives the same unions
+          merging[a[k]] = merging[b[k]] = false;
+          graph.merge(nr[k], (nr[k] == a[k]) ? b[k] : a[k]);
+        }
+        int next = 0;
+        for(int i=0; i<count; i++)
+          if(ds.find(live[i]) == live[i])
+            roots[next++] = live[i];
+        count = next;
+      }
+    }
+
+    /**
+     * Selects how regions are merged: Engine.GREEDY, the default, always merges the single most similar pair next;
+     * Engine.ROUNDS merges many non-conflicting pairs per round in parallel, trading the exact greedy order for wall-clock time.
+     * @param engine The merge engine.
+     */
+    public void setEngine(Engine engine)
+    {
+      this.engine = engine;
+    }
+
+    /**
+     * The ways segment can merge regions.
+     */
+    public enum Engine
+    {
+      /**
+       * One pair at a time, always the most similar pair of adjacent regions.
+       */
+      GREEDY,
+      /**
+       * Parallel rounds where every region merges with its most similar neighbor unless that conflicts with a better merge.
+       */
+      ROUNDS
+    }
+
+    /**
+     * Turns the progress bar, the region statistics and the saved file message on or off. On by default;
+     * batch runs turn it off since many images share one console.
+     * @param verbose Whether to print while segmenting and saving.
+     */
+    public void setVerbose(boolean verbose)
+    {
+      this.verbose = verbose;
+    }
+
+    /**
+     * Sets what outputResults saves: the recolored image as a PNG, and the regions as a label map (see LabelMap) in a .isl file.
+     * Only the image by default; the label map is far quicker to write and read back for large images.
+     * @param image Whether to save the PNG.
+     * @param labels Whether to save the label map.
+     */
+    public void setOutput(boolean image, boolean labels)
+    {
+      this.saveImage = image;
+      this.saveLabels = labels;
+    }
+
+    /**
+     * Sets which pixels count as neighbors: 4 for pixels sharing an edge only, 8 to include the diagonal ones. Defaults to 8.
+     * @param connectivity 4 or 8.
+     * @throws IllegalArgumentException if connectivity is not 4 or 8.
+     */
+    public void setConnectivity(int connectivity)
+    {
+      if(connectivity != 4 && connectivity != 8)
+        throw new IllegalArgumentException(new String("! Error: connectivity should be 4 or 8, current connectivity="+connectivity));
+      this.connectivity = connectivity;
+    }
+
+    /**
+     * Turns on coarse-to-fine segmentation. The image is halved levels times; the smallest copy is segmented, and every level up starts from
+     * the regions of the level below, with only the pixels along region boundaries on their own, before it is merged down to PYRAMID_OVERSEGMENT*K
+     * regions, or to K at full resolution. Most of the trivial merges of near identical pixels happen on the small copies, trading the exact
+     * greedy order near boundaries for far fewer merges. Ignored when tiling is on, and for images under 2*MIN_LEVEL_SIZE pixels across.
+     * @param levels The number of times to halve the image, 0 to turn the pyramid off.
+     * @throws IllegalArgumentException if levels is negative.
+     */
+    public void setPyramid(int levels)
+    {
+      if(levels < 0)
+        throw new IllegalArgumentException(new String("! Error: pyramid levels should not be negative, current levels="+levels));
+      this.pyramidLevels = levels;
+    }
+
+    /**
+     * Sets the pre-merge pass: before anything is queued, neighboring pixels whose colors differ by at most tolerance in every channel
+     * are unioned in one linear scan. A tolerance of 0 only joins identical colors, which the merge would have joined first anyway,
+     * and shrinks the queue by orders of magnitude on flat backgrounds, screenshots and diagrams; a larger tolerance trades accuracy for speed on
+     * photographs. Ignored when tiling or a pyramid is on. When a tolerance 0 pass joins fewer than one pixel in PREMERGE_MIN_GAIN, as on most
+     * photographs, its result is dropped and the merge starts from single pixels with the edges scored in parallel, as with the pass off;
+     * that gives the same regions, since the merge takes the zero distance pairs first anyway. A larger tolerance is always kept.
+     * @param tolerance The largest per channel difference to join, 0 (the default) to 255, or -1 to turn the pass off.
+     * @throws IllegalArgumentException if tolerance is out of range.
+     */
+    public void setPreMerge(int tolerance)
+    {
+      if(tolerance < -1 || tolerance > 255)
+        throw new IllegalArgumentException(new String("! Error: pre-merge tolerance should be -1 to 255, current tolerance="+tolerance));
+      this.premergeTolerance = tolerance;
+    }
+
+    /**
+     * Sets the color metric: how far apart two colors are, and so which regions the greedy merge joins first (see ColorMetric).
+     * Regions keep their moments in the channels of the metric, so merge distances cost the same for every metric;
+     * the pre-merge tolerance and getError are measured in those channels too. Defaults to ColorMetric.RGB.
+     * @param metric The color metric.
+     * @throws IllegalArgumentException if metric is null.
+     */
+    public void setColorMetric(ColorMetric metric)
+    {
+      if(metric == null)
+        throw new IllegalArgumentException(new String("! Error: color metric should not be null"));
+      this.metric = metric;
+    }
+
+    /**
+     * @return The channels of every pixel under the color metric, mapped once per metric; the pixels themselves for RGB.
+     */
+    private int[] channels()
+    {
+      if(channelsMetric != metric){
+        channels = metric.transform(pixels);
+        channelsMetric = metric;
+      }
+      return channels;
+    }
+
+    /**
+     * Returns how far the current regions are from the image: the sum, over every pixel and channel, of the squared difference
+     * between the pixel and the average color of its region. This is what the greedy merge keeps small, so it measures how
+     * much a faster mode gives up against the exact greedy result at the same K.
+     * @return The total squared error.
+     */
+    public double getError()
+    {
+      double error = 0;
+      for(int id=0; id<pixels.length; id++){
+        if(ds.find(id) != id) continue;
+        double n = ds.getSize(id);
+        for(int channel=0; channel<3; channel++){
+          double sum = ds.getSum(id, channel);
+          error += ds.getSumOfSquares(id, channel) - sum*sum/n;
+        }
+      }
+      return error;
+    }
+
+    /**
+     * Turns on tile-parallel segmentation. The image is cut into tileSize by tileSize tiles, every tile is segmented on its own
+     * down to tileRegions regions using a pool of parallelism threads, and only then are the tiles merged together down to K.
+     * This trades the exact greedy order near tile boundaries for using every core on large images.
+     * @param tileSize The width and height of a tile in pixels, 0 to turn tiling off.
+     * @param tileRegions The number of regions every tile is reduced to before the global merge.
+     * @param parallelism The number of tiles segmented at the same time.
+     * @throws IllegalArgumentException if tileSize is negative, or tileRegions or parallelism is less than 1.
+     */
+    public void setTiling(int tileSize, int tileRegions, int parallelism)
+    {
+      if(tileSize < 0 || tileRegions < 1 || parallelism < 1)
+        throw new IllegalArgumentException(new String("! Error: bad tiling, tile size="+tileSize+" tile regions="+tileRegions+" parallelism="+parallelism));
+      this.tileSize = tileSize;
+      this.tileRegions = tileRegions;
+      this.parallelism = parallelism;
+    }
+
+    /**
+     * Segments every tile of the image as an image of its own, in parallel, and folds the regions of all tiles into one disjoint set over the whole image.
+     * Every tile keeps at least enough regions for the whole image to still have K.
+     * @param K The number of regions the whole image will be reduced to.
+     * @return The disjoint set of all pixels, partitioned into the regions of the tiles.
+     */
+    private IntDisjointSets segmentTiles(int K)
+    {
+      final int width = this.image.getWidth();
+      final int height = this.image.getHeight();
+      int tilesWide = (width+tileSize-1)/tileSize;
+      int tilesHigh = (height+tileSize-1)/tileSize;
+      final int budget = Math.max(tileRegions, (K+tilesWide*tilesHigh-1)/(tilesWide*tilesHigh));
+      ArrayList<Callable<IntDisjointSets>> tiles = new ArrayList<Callable<IntDisjointSets>>();
+      for(int th=0; th<tilesHigh; th++){
+        for(int tw=0; tw<tilesWide; tw++){
+          final int w0 = tw*tileSize, h0 = th*tileSize;
+          tiles.add(new Callable<IntDisjointSets>(){
+            public IntDisjointSets call() {
+              return segmentTile(w0, h0, Math.min(tileSize, width-w0), Math.min(tileSize, height-h0), budget);
+            }
+          });
+        }
+      }
+      ForkJoinPool pool = new ForkJoinPool(parallelism);
+      IntDisjointSets global = new IntDisjointSets(channels());
+      try{
+        List<Future<IntDisjointSets>> results = pool.invokeAll(tiles);
+        int t = 0;
+        for(int th=0; th<tilesHigh; th++){
+          for(int tw=0; tw<tilesWide; tw++){
+            IntDisjointSets local = results.get(t++).get();
+            int w0 = tw*tileSize, h0 = th*tileSize, tilewidth = Math.min(tileSize, width-w0);
+            for(int lid=0; lid<tilewidth*Math.min(tileSize, height-h0); lid++){
+              int lroot = local.find(lid);
+              if(lroot == lid) continue;
+              int a = global.find(width*(h0+lid/tilewidth)+w0+lid%tilewidth);
+              int b = global.find(width*(h0+lroot/tilewidth)+w0+lroot%tilewidth);
+              if(a != b){
+                history.add(a, b, -1);
+                global.union(a, b);
+              }
+            }
+          }
+        }
+      }
+      catch(InterruptedException e){
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("! Error: tile segmentation was interrupted", e);
+      }
+      catch(ExecutionException e){
+        throw new IllegalStateException("! Error: tile segmentation failed", e.getCause());
+      }
+      finally{
+        pool.shutdown();
+      }
+      return global;
+    }
+
+    /**
+     * Segments one tile of the image on its own, with the same greedy merge as the whole image.
+     * @param w0 The column of the top left pixel of the tile.
+     * @param h0 The row of the top left pixel of the tile.
+     * @param tilewidth The width of the tile.
+     * @param tileheight The height of the tile.
+     * @param budget The number of regions to leave in the tile.
+     * @return The disjoint set of the tile's pixels, with local ids tilewidth*h+w.
+     */
+    private IntDisjointSets segmentTile(int w0, int h0, int tilewidth, int tileheight, int budget)
+    {
+      int[] colors = new int[tilewidth*tileheight];
+      int[] channels = channels();
+      for(int h=0; h<tileheight; h++)
+        System.arraycopy(channels, this.image.getWidth()*(h0+h)+w0, colors, tilewidth*h, tilewidth);
+      return segmentColors(colors, tilewidth, tileheight, budget);
+    }
+
+    /**
+     * The pre-merge pass: one raster scan that unions every pair of neighboring pixels whose colors differ by at most premergeTolerance
+     * in every channel, i.e. labels the connected components of (nearly) equal color, stopping early if only K regions would be left.
+     * With a tolerance of 0 these are exactly the zero distance pairs the merge would take first anyway, but done in linear time
+     * without queueing them; the queue is then seeded only with the pairs between components.
+     * @param K The number of regions to keep at least.
+     * @return The disjoint set of all pixels, partitioned into components.
+     */
+    private IntDisjointSets premerge(int K)
+    {
+      int width = this.image.getWidth();
+      int height = this.image.getHeight();
+      int[] colors = channels();
+      IntDisjointSets ds = new IntDisjointSets(colors);
+      for(int id=0; id<colors.length && ds.getNumSets()>K; id++){
+        int w = id%width, h = id/width;
+        for(int k=0; k<connectivity/2 && ds.getNumSets()>K; k++){//every union may be the one that reaches K
+          int nw = w+FORWARD_DW[k], nh = h+FORWARD_DH[k];
+          if(nw<0 || nw>=width || nh>=height) continue;
+          int c1 = colors[id], c2 = colors[width*nh+nw];
+          if(Math.abs(((c1>>16)&0xff)-((c2>>16)&0xff)) > premergeTolerance || Math.abs(((c1>>8)&0xff)-((c2>>8)&0xff)) > premergeTolerance
+             || Math.abs((c1&0xff)-(c2&0xff)) > premergeTolerance) continue;
+          int a = ds.find(id), b = ds.find(width*nh+nw);
+          if(a == b) continue;
+          history.add(a, b, (premergeTolerance == 0) ? 0 : -1);
+          ds.union(a, b);
+        }
+      }
+      metrics.scanned(pixels.length);
+      return ds;
+    }
+
+    /**
+     * Segments a grid of colors on its own with the greedy merge, without recording history or printing progress.
+     * @param colors The packed 0xRRGGBB color of every pixel, row by row.
+     * @param width The width of the grid.
+     * @param height The height of the grid.
+     * @param budget The number of regions to leave.
+     * @return The disjoint set of the grid's pixels, with ids width*h+w.
+     */
+    private IntDisjointSets segmentColors(int[] colors, int width, int height, int budget)
+    {
+      IntDisjointSets local = new IntDisjointSets(colors);
+      SimilarityQueue pq = new SimilarityQueue((connectivity/2)*colors.length);
+      EdgeBuffer edges = new EdgeBuffer((connectivity/2)*colors.length);
+      scoreRows(colors, width, height, 0, height, edges);
+      metrics.count(0, 0, 0, edges.size());
+      metrics.scanned(colors.length);
+      edges.drainTo(pq);
+      pq.buildHeap();
+      mergeRegions(local, pq, new RegionGraph(local, width, height, connectivity), budget, null);
+      return local;
+    }
+
+    /**
+     * Builds the starting partition of one level of the pyramid: the grid is downscaled by 2, the smaller grid is segmented
+     * (recursively, from its own downscaled copy, for more levels) down to coarseK regions, and its regions are projected back up.
+     * Pixels under a coarse pixel that touches another coarse region are left on their own, so the merge that follows decides
+     * the boundaries at this resolution; every other pixel joins the region of its coarse pixel.
+     * @param colors The packed 0xRRGGBB color of every pixel of this level, row by row.
+     * @param width The width of this level.
+     * @param height The height of this level.
+     * @param levels The number of levels below this one.
+     * @param coarseK The number of regions every coarser level is reduced to.
+     * @param history Where to record the unions of the projection, or null.
+     * @return The disjoint set of this level's pixels, partitioned but not merged.
+     */
+    private IntDisjointSets refine(int[] colors, int width, int height, int levels, int coarseK, MergeHistory history)
+    {
+      int cw = (width+1)/2, ch = (height+1)/2;
+      int[] coarse = new int[cw*ch];
+      for(int y=0; y<ch; y++){
+        for(int x=0; x<cw; x++){
+          long r = 0, g = 0, b = 0;
+          int n = 0;
+          for(int dy=0; dy<2 && 2*y+dy<height; dy++){
+            for(int dx=0; dx<2 && 2*x+dx<width; dx++){
+              int c = colors[width*(2*y+dy)+2*x+dx];
+              r += (c>>16)&0xff;
+              g += (c>>8)&0xff;
+              b += c&0xff;
+              n++;
+            }
+          }
+          coarse[cw*y+x] = (int)(r/n)<<16 | (int)(g/n)<<8 | (int)(b/n);
+        }
+      }
+      IntDisjointSets cds;
+      if(levels > 1 && cw >= 2*MIN_LEVEL_SIZE && ch >= 2*MIN_LEVEL_SIZE){
+        cds = refine(coarse, cw, ch, levels-1, coarseK, null);
+        SimilarityQueue pq = new SimilarityQueue(4*cds.getNumSets());
+        RegionGraph graph = new RegionGraph(cds, cw, ch, connectivity);
+        seedFromPartition(cds, coarse, cw, ch, pq, graph);
+        mergeRegions(cds, pq, graph, coarseK, null);
+      }
+      else
+        cds = segmentColors(coarse, cw, ch, coarseK);
+
+      int[] label = new int[cw*ch];
+      for(int c=0; c<label.length; c++)
+        label[c] = cds.find(c);
+      boolean[] boundary = new boolean[cw*ch];
+      for(int y=0; y<ch; y++){
+        for(int x=0; x<cw; x++){
+          for(int k=0; k<connectivity/2; k++){
+            int nx = x+FORWARD_DW[k], ny = y+FORWARD_DH[k];
+            if(nx<0 || nx>=cw || ny>=ch || label[cw*y+x] == label[cw*ny+nx]) continue;
+            boundary[cw*y+x] = boundary[cw*ny+nx] = true;
+          }
+        }
+      }
+      IntDisjointSets fine = new IntDisjointSets(colors);
+      int[] first = new int[cw*ch];//the first pixel of every coarse region, by coarse root
+      Arrays.fill(first, -1);
+      for(int id=0; id<colors.length; id++){
+        int c = cw*((id/width)/2)+(id%width)/2;
+        if(boundary[c]) continue;
+        if(first[label[c]] < 0){
+          first[label[c]] = id;
+          continue;
+        }
+        int a = fine.find(first[label[c]]), b = fine.find(id);
+        if(history != null)
+          history.add(a, b, -1);
+        fine.union(a, b);
+      }
+      metrics.scanned(colors.length);
+      return fine;
+    }
+
+    /**
+     * Fills pq and graph with the adjacencies of a disjoint set that already has merged regions in it,
+     * by looking at every pair of neighboring pixels once. Each pair of adjacent regions is queued once.
+     * Pairs of two single pixels are queued without a lookup, since two single pixels only meet once. When most regions are single
+     * pixels, as after a pre-merge of a photograph, those pairs are scored a row at a time by rowCosts; otherwise, and for pairs with
+     * a larger region, from the moments.
+     * @param ds The partitioned disjoint set.
+     * @param colors The colors ds was made from, row by row.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param pq The empty queue to fill, heapified at the end, or null to only fill the graph.
+     * @param graph The region adjacency graph of ds to fill.
+     */
+    private void seedFromPartition(IntDisjointSets ds, int[] colors, int width, int height, SimilarityQueue pq, RegionGraph graph)
+    {
+      long similarities = 0;
+      boolean fine = pq != null && ds.getNumSets() > (long)width*height/2;//batch scoring pays when most pairs are two single pixels
+      int[][] costs = fine ? new int[connectivity/2][width] : null;
+      for(int h=0; h<height; h++){
+        if(fine)
+          rowCosts(colors, width, height, h, costs);
+        for(int w=0; w<width; w++){
+          for(int k=0; k<connectivity/2; k++){
+            int nw = w+FORWARD_DW[k], nh = h+FORWARD_DH[k];
+            if(nw<0 || nw>=width || nh>=height) continue;
+            int a = ds.find(width*h+w), b = ds.find(width*nh+nw);
+            if(a == b) continue;
+            if(pq != null){
+              boolean single = ds.getSize(a) == 1 && ds.getSize(b) == 1;
+              if(!single && pq.contains(a, b)) continue;
+              pq.append((single && fine) ? costs[k][(nw < w) ? w-1 : w] : getSimilarity(ds,a,b), a, b);
+              similarities++;
+            }
+            graph.connect(a, b);
+          }
+        }
+      }
+      metrics.count(0, 0, 0, similarities);
+      metrics.scanned((long)width*height);
+      if(pq != null)
+        pq.buildHeap();
+    }
+
+    /**
+     * Scores every forward pair of neighboring pixels whose first pixel is in row h as two single pixels, one direction at a time
+     * with ColorMetric.pairCosts: costs[k][w] is the pair of column w in direction k (E, S, SE, SW), except SW, which starts at
+     * column 1 and so is costs[3][w-1]. Directions that leave the image are left as they were.
+     * @param colors The channels of every pixel under the color metric, row by row.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param h The row.
+     * @param costs One array of width ints per direction.
+     */
+    private void rowCosts(int[] colors, int width, int height, int h, int[][] costs)
+    {
+      int row = width*h;
+      metric.pairCosts(colors, row, 1, width-1, costs[0]);
+      if(h+1 < height){
+        metric.pairCosts(colors, row, width, width, costs[1]);
+        if(connectivity == 8){
+          metric.pairCosts(colors, row, width+1, width-1, costs[2]);
+          metric.pairCosts(colors, row+1, width-1, width-1, costs[3]);
+        }
+      }
+    }
+
+    /**
+     * Scores every pair of neighboring pixels whose first pixel is in rows from (inclusive) to to (exclusive).
+     * Each pixel only looks forward (E, S and, with 8-connectivity, SE and SW), so every pair is scored exactly once.
+     * The pairs of a row are scored a direction at a time by rowCosts, then added in the same order as pixel by pixel.
+     * @param colors The channels of every pixel under the color metric, row by row.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param from The first row.
+     * @param to One past the last row.
+     * @param out The buffer to add the scored pairs to.
+     */
+    private void scoreRows(int[] colors, int width, int height, int from, int to, EdgeBuffer out)
+    {
+      int[][] costs = new int[connectivity/2][width];//by direction, the cost of the pair starting at every column
+      for(int h=from; h<to; h++){
+        int row = width*h;
+        rowCosts(colors, width, height, h, costs);
+        for(int w=0; w<width; w++){
+          int id = row+w;
+          if(w+1 < width)
+            out.add(costs[0][w], id, id+1);
+          if(h+1 < height){
+            out.add(costs[1][w], id, id+width);
+            if(connectivity == 8){
+              if(w+1 < width)
+                out.add(costs[2][w], id, id+width+1);
+              if(w > 0)
+                out.add(costs[3][w-1], id, id+width-1);
+            }
+          }
+        }
+      }
+    }
+
+    /**
+     * Fork-join task that scores every pair of neighboring pixels in a range of row bands, one EdgeBuffer per band.
+     * Each pixel only looks forward (E, S and, with 8-connectivity, SE and SW), so every pair is scored exactly once.
+     */
+    @SuppressWarnings("serial") //never serialized, RecursiveAction just happens to be Serializable
+    private class EdgeTask extends RecursiveAction
+    {
+      /**
+       * The buffer of every band, filled in by the leaves
+       */
+      private EdgeBuffer[] edges;
+      /**
+       * The first band of this task
+       */
+      private int from;
+      /**
+       * One past the last band of this task
+       */
+      private int to;
+
+      /**
+       * Constructor for an EdgeTask over bands from (inclusive) to to (exclusive).
+       * @param edges The buffer of every band.
+       * @param from The first band.
+       * @param to One past the last band.
+       */
+      public EdgeTask(EdgeBuffer[] edges, int from, int to)
+      {
+        this.edges = edges;
+        this.from = from;
+        this.to = to;
+      }
+
+      /**
+       * Splits the bands in half until one is left, then scores the rows of that band.
+       */
+      protected void compute()
+      {
+        if(to-from > 1){
+          int mid = (from+to)>>>1;
+          invokeAll(new EdgeTask(edges, from, mid), new EdgeTask(edges, mid, to));
+          return;
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int last = Math.min(height, (from+1)*ROWS_PER_TASK);
+        EdgeBuffer band = new EdgeBuffer((connectivity/2)*width*(last-from*ROWS_PER_TASK));
+        scoreRows(channels(), width, height, from*ROWS_PER_TASK, last, band);
+        metrics.count(0, 0, 0, band.size());
+        metrics.scanned((long)width*(last-from*ROWS_PER_TASK));
+        edges[from] = band;
+      }
+    }
+
+    /** 
+     * Coded by professor lien, prints progress to the screen while segment is running. 
+     * @param K The same K that segment has, aka the regions to reduce to. 
+     */
+    private void tell_progress(int K) //K is the same as in segment(int K)
+    {
+      float progress = (100.0f*K)/ds.getNumSets();
+      int p = (int)Math.floor(progress);
+      String bar="["+(new String(new char[p]).replace("\0","*")) +(new String(new char[100-p]).replace("\0","-"))+"]";
+      System.err.print("Progress: "+String.format("%.02f",progress)+"% "+bar+"\r");
+    }
+    /**
+     * Outputs the results of what segment provided, and recolors the pixels iteratively
+     * This method also outputs the image statistics to the command line as its recoloring. 
+     * The regions are found in one pass over the pixels, ordered from largest to smallest (ties by root, largest first) with a radix sort,
+     * and the pixels recolored in one more pass, all in int arrays kept from one call to the next. 
+     * @param K The K regions remaining. 
+     */
+    public void outputResults(int K)
+    {
+      metrics.begin(SegmentationMetrics.Phase.OUTPUT);
+      recolor();
+      if(saveImage){
+        String out_filename = img_filename+"_seg_"+K+".png";
+        try
+        {
+          File ouptut = new File(out_filename);
+          ImageIO.write(this.image, "png", ouptut);
+          if(verbose)
+            System.err.println("- Saved result to "+out_filename);
+        }
+        catch (Exception e) {
+          System.err.println("! Error: Failed to save image to "+out_filename);
+        }
+      }
+      if(saveLabels){
+        labelRegions();
+        String out_filename = img_filename+"_seg_"+K+".isl";
+        try
+        {
+          LabelMap.write(new File(out_filename), image.getWidth(), image.getHeight(), rootOf, Arrays.copyOf(regionRoots, regionCount), Arrays.copyOf(regionColors, regionCount));
+          if(verbose)
+            System.err.println("- Saved labels to "+out_filename);
+        }
+        catch (IOException e) {
+          System.err.println("! Error: Failed to save labels to "+out_filename+", error msg: "+e);
+        }
+      }
+      metrics.end();
+    }
+
+    /**
+     * Like outputResults, but writes the recolored image as a PNG, or the label map, to a stream instead of a file.
+     * @param out The stream to write to, left open.
+     * @param labels Whether to write the label map (see LabelMap) instead of the PNG.
+     * @throws IOException if writing to out fails.
+     */
+    public void writeResults(OutputStream out, boolean labels) throws IOException
+    {
+      metrics.begin(SegmentationMetrics.Phase.OUTPUT);
+      try
+      {
+        recolor();
+        if(labels){
+          labelRegions();
+          LabelMap.write(Channels.newChannel(out), image.getWidth(), image.getHeight(), rootOf, Arrays.copyOf(regionRoots, regionCount), Arrays.copyOf(regionColors, regionCount));
+        }
+        else if(!ImageIO.write(this.image, "png", out))
+          throw new IOException("no PNG writer");
+      }
+      finally
+      {
+        metrics.end();
+      }
+    }
+
+    /**
+     * Recolors the image with the average color of every region, and prints the region statistics when verbose.
+     * The regions are found in one pass over the pixels, ordered from largest to smallest (ties by root, largest first) with a radix sort,
+     * and the pixels recolored in one more pass, all in arrays kept from one call to the next: after the first call, recolor allocates
+     * nothing unless there are more regions than ever before. Leaves the root of every pixel in rootOf and the first regionCount
+     * entries of regionRoots and regionColors the regions in order.
+     */
+    private void recolor()
+    {
+      int n = pixels.length;
+      if(rootOf == null){
+        rootOf = new int[n];
+        byRoot = new int[n];
+        recolored = new int[n];
+        radixCounts = new int[RADIX+1];
+      }
+      int count = ds.getNumSets();
+      if(regionRoots == null || regionRoots.length < count){//cuts go from many regions to few, so this is mostly the first call
+        regionRoots = new int[count];
+        regionColors = new int[count];
+        sortKeys = new int[count];
+        sortedRoots = new int[count];
+        sortedKeys = new int[count];
+      }
+      //collect all sets, going down the ids so the roots come out largest first
+      for(int id=0; id<n; id++)
+        rootOf[id] = ds.find(id);
+      count = 0;
+      for(int id=n-1; id>=0; id--)
+        if(rootOf[id] == id)
+          regionRoots[count++] = id;
+      regionCount = count;
+      //sort the regions
+      sortBySize();
+      if(verbose){
+        if(stats == null){
+          stats = new StringBuilder();
+          statsOut = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1<<16));
+        }
+        stats.setLength(0);
+      }
+      for(int i=0; i<count; i++){
+        int c = computeAverageColor(regionRoots[i]);
+        regionColors[i] = c;
+        byRoot[regionRoots[i]] = c;
+        if(verbose)//Print image region statistics. 
+          stats.append("region ").append(i+1).append(" size= ").append(ds.getSize(regionRoots[i]))
+            .append(" color=java.awt.Color[r=").append((c>>16)&0xff).append(",g=").append((c>>8)&0xff).append(",b=").append(c&0xff).append("]\n");
+      }
+      if(verbose){
+        statsOut.append(stats);
+        statsOut.flush();
+      }
+      for(int id=0; id<n; id++)
+        recolored[id] = byRoot[rootOf[id]];
+      writePixels(recolored);
+      metrics.scanned(2L*n);//once to find the roots, once to recolor
+    }
+
+    /**
+     * Turns the root of every pixel that recolor left in rootOf into the index of its region in regionRoots.
+     */
+    private void labelRegions()
+    {
+      for(int i=0; i<regionCount; i++)
+        byRoot[regionRoots[i]] = i;
+      for(int id=0; id<pixels.length; id++)
+        rootOf[id] = byRoot[rootOf[id]];
+      metrics.scanned(pixels.length);
+    }
+
+    /**
+     * Writes packed 0xRRGGBB colors into the image, one per pixel id. For the layouts ImageIO decodes to the colors go straight into
+     * the backing array of the raster, a plain copy or byte shuffle; any other image goes through setRGB, which converts every pixel through its color model.
+     * @param rgb The color of every pixel.
+     */
+    private void writePixels(int[] rgb)
+    {
+      int n = rgb.length;
+      DataBuffer buffer = image.getRaster().getDataBuffer();
+      int type = image.getType();
+      if((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB) && buffer instanceof DataBufferInt
+        && ((DataBufferInt)buffer).getData().length == n){
+        int[] data = ((DataBufferInt)buffer).getData();
+        for(int id=0; id<n; id++)
+          data[id] = 0xff000000|rgb[id];
+      }
+      else if(type == BufferedImage.TYPE_3BYTE_BGR && buffer instanceof DataBufferByte && ((DataBufferByte)buffer).getData().length == 3*n){
+        byte[] data = ((DataBufferByte)buffer).getData();
+        for(int id=0, at=0; id<n; id++){
+          int c = rgb[id];
+          data[at++] = (byte)c;
+          data[at++] = (byte)(c>>8);
+          data[at++] = (byte)(c>>16);
+        }
+      }
+      else if(type == BufferedImage.TYPE_4BYTE_ABGR && buffer instanceof DataBufferByte && ((DataBufferByte)buffer).getData().length == 4*n){
+        byte[] data = ((DataBufferByte)buffer).getData();
+        for(int id=0, at=0; id<n; id++){
+          int c = rgb[id];
+          data[at++] = (byte)0xff;
+          data[at++] = (byte)c;
+          data[at++] = (byte)(c>>8);
+          data[at++] = (byte)(c>>16);
+        }
+      }
+      else
+        image.setRGB(0, 0, image.getWidth(), image.getHeight(), rgb, 0, image.getWidth());
+    }
+
+    /**
+     * Sorts the first regionCount roots of regionRoots from the largest set to the smallest with a stable LSD radix sort on the set sizes,
+     * 16 bits a pass, so roots that tie keep their order. Works in the scratch arrays, swapping them between passes.
+     */
+    private void sortBySize()
+    {
+      int count = regionCount;
+      int[] roots = regionRoots, keys = sortKeys, sorted = sortedRoots, nextKeys = sortedKeys;
+      int max = 0;
+      for(int i=0; i<count; i++){
+        keys[i] = pixels.length-ds.getSize(roots[i]);//ascending keys are descending sizes
+        max = Math.max(max, keys[i]);
+      }
+      int[] counts = radixCounts;
+      for(int shift=0; shift<32 && (max>>>shift) > 0; shift+=16){
+        Arrays.fill(counts, 0);
+        for(int i=0; i<count; i++)
+          counts[((keys[i]>>>shift)&(RADIX-1))+1]++;
+        for(int d=0; d<RADIX; d++)
+          counts[d+1] += counts[d];
+        for(int i=0; i<count; i++){
+          int at = counts[(keys[i]>>>shift)&(RADIX-1)]++;
+          sorted[at] = roots[i];
+          nextKeys[at] = keys[i];
+        }
+        int[] swap = roots; roots = sorted; sorted = swap;
+        swap = keys; keys = nextKeys; nextKeys = swap;
+      }
+      regionRoots = roots;
+      sortedRoots = sorted;
+      sortKeys = keys;
+      sortedKeys = nextKeys;
+    }
+
+    /**
+     * Rolls the segmentation back to K regions by replaying its merge history, so outputResults(K) then writes the K region result
+     * of the same run. Cuts are cheapest from many regions to few: going down continues the replay, going up restarts it.
+     * A cut is the same partition a direct segment(K) gives only when nothing before the last merge depends on K: the greedy engine
+     * with no tiling, pyramid or pre-merge. With tiling the tiles are reduced to a budget that grows with K, the pyramid oversegments
+     * to PYRAMID_OVERSEGMENT*K, the pre-merge stops at K and the last parallel round is cut short at K, so there a cut is the
+     * K region state of the smaller K run, not a separate run.
+     * If the merge stopped early because no adjacent regions were left, the cut has the fewest regions the run reached.
+     * @param K The number of regions, at least the K segment was last called with.
+     * @throws IllegalStateException if segment has not been called yet.
+     * @throws IllegalArgumentException if K is smaller than the K segment stopped at.
+     */
+    public void cut(int K)
+    {
+      if(ds == null)
+        throw new IllegalStateException("! Error: cut needs segment to run first");
+      if(history == null){//read from the cache, so there is no history to replay
+        if(K == ds.getNumSets())
+          return;
+        merge(restoredK);
+      }
+      if(K < history.getMinRegions())
+        throw new IllegalArgumentException(new String("! Error: K should be at least "+history.getMinRegions()+", current K="+K));
+      if(ds.getNumSets() < K){
+        ds = new IntDisjointSets(channels());
+        replayed = 0;
+      }
+      replayed = history.replay(ds, replayed, K);
+    }
+
+    /**
+     * Turns on the result cache: segment first looks for its result in cache, under a hash of the pixels, K and every
+     * setting that changes the result, and adds it when it is not there and the merge was not stopped. Only the K segment actually ran to
+     * is stored: a cut can differ from a separate run at its K (see cut), so cuts are never stored or read. A result read from the cache
+     * has no merge history, so a later cut to any other K runs the full segmentation again.
+     * @param cache The cache, possibly shared with other decomposers, or null to turn it off.
+     */
+    public void setCache(ResultCache cache)
+    {
+      this.cache = cache;
+    }
+
+    /**
+     * Replaces ds with the K region result in the cache, if there is one. Every pixel is unioned straight into the root it had,
+     * which therefore stays the root: it wins the tie with the first pixel and is larger after that.
+     * @param K The number of regions.
+     * @return Whether the result was in the cache.
+     */
+    private boolean restore(int K)
+    {
+      if(cache == null)
+        return false;
+      ResultCache.Entry entry = cache.load(cacheKey(K), pixels.length);
+      if(entry == null)
+        return false;
+      IntDisjointSets restored = new IntDisjointSets(channels());
+      for(int id=0; id<pixels.length; id++){
+        int root = entry.roots[entry.labels[id]];
+        if(root != id)
+          restored.union(root, id);
+      }
+      ds = restored;
+      history = null;
+      replayed = 0;
+      restoredK = K;
+      return true;
+    }
+
+    /**
+     * Adds the current result to the cache as the K region result, unless it is there already.
+     * @param K The number of regions.
+     */
+    private void store(int K)
+    {
+      String key = cacheKey(K);
+      if(cache.contains(key))
+        return;
+      cache.store(key, ds, pixels.length);
+    }
+
+    /**
+     * Makes the cache key of the K region result: the hex SHA-256 of the image size, the pixels, K and the settings that change the result.
+     * The pixels are hashed once and the digest reused for every K.
+     * @param K The number of regions.
+     * @return The key.
+     */
+    private String cacheKey(int K)
+    {
+      try
+      {
+        if(pixelDigest == null){
+          MessageDigest digest = MessageDigest.getInstance("SHA-256");
+          ByteBuffer buffer = ByteBuffer.allocate(4*1024);
+          buffer.putInt(image.getWidth()).putInt(image.getHeight());
+          for(int pixel: pixels){
+            if(!buffer.hasRemaining()){
+              buffer.flip();
+              digest.update(buffer);
+              buffer.clear();
+            }
+            buffer.putInt(pixel&0xffffff);
+          }
+          buffer.flip();
+          digest.update(buffer);
+          pixelDigest = digest.digest();
+        }
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(pixelDigest);
+        String settings = K+" "+connectivity+" "+engine+" "+tileSize+" "+tileRegions+" "+pyramidLevels+" "+premergeTolerance+" "+metric;
+        digest.update(settings.getBytes(StandardCharsets.UTF_8));
+        StringBuilder key = new StringBuilder();
+        for(byte b: digest.digest())
+          key.append(String.format("%02x", b));
+        return key.toString();
+      }
+      catch(NoSuchAlgorithmException e)
+      {
+        throw new IllegalStateException("! Error: SHA-256 is not available", e);//every JRE has to provide it
+      }
+    }
+
+    /**
+     * Returns the merge history of the last segment call.
+     * @return The history, or null before segment is called.
+     */
+    public MergeHistory getHistory()
+    {
+      return history;
+    }
+
+    /**
+     * Returns the counters and phase timings of this decomposer, updated as it runs.
+     * @return The metrics.
+     */
+    public SegmentationMetrics getMetrics()
+    {
+      return metrics;
+    }
+
+    //-----------------------------------------------------------------------
+    //
+    //
+    // Todo: Read and provide comments, but do not change the following code
+    //
+    //
+    //-----------------------------------------------------------------------
+    /**
+     * The image to decompose, represented as a 2D array of RGB pixels. 
+     */
+    public BufferedImage image;       //this is the 2D array of RGB pixels
+    /** 
+     * The filename of the image being inputted
+     */
+    private String img_filename;      //input image filename without .jpg or .png
+    /** 
+     * The disjoint set of all the pixels in the image.
+     */
+    private IntDisjointSets ds;   //the disjoint set
+    /**
+     * The packed 0xRRGGBB color of every pixel, indexed by pixel id. Read from the image once when it is loaded.
+     */
+    private int[] pixels;
+    /**
+     * How many neighbors a pixel has, 4 or 8.
+     */
+    private int connectivity = 8;
+    /**
+     * How regions are merged.
+     */
+    private Engine engine = Engine.GREEDY;
+    /**
+     * Whether to print progress and region statistics.
+     */
+    private boolean verbose = true;
+    /**
+     * What outputResults saves: the recolored PNG and the label map.
+     */
+    private boolean saveImage = true;
+    private boolean saveLabels = false;
+    /**
+     * Width and height of a tile for tile-parallel segmentation, 0 when tiling is off.
+     */
+    private int tileSize = 0;
+    /**
+     * The number of regions every tile is reduced to before the tiles are merged.
+     */
+    private int tileRegions = 1;
+    /**
+     * The number of tiles segmented at the same time.
+     */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    /**
+     * The number of times the image is halved for coarse-to-fine segmentation, 0 when it is off.
+     */
+    private int pyramidLevels = 0;
+    /**
+     * Every coarse level of the pyramid is reduced to this many times K regions, so the finer levels still have boundaries to choose between.
+     */
+    private static final int PYRAMID_OVERSEGMENT = 4;
+    /**
+     * The pre-merge result is only kept if it joined at least one pixel in PREMERGE_MIN_GAIN; seeding the queue from a partition
+     * is a sequential scan with a hash lookup per pixel pair, which only beats the parallel build of the singleton edges when the partition is much smaller.
+     */
+    private static final int PREMERGE_MIN_GAIN = 8;
+    /**
+     * The smallest width or height a pyramid level is segmented at.
+     */
+    private static final int MIN_LEVEL_SIZE = 16;
+    /**
+     * The largest per channel difference the pre-merge pass joins, -1 when it is off.
+     */
+    private int premergeTolerance = 0;
+    /**
+     * The color metric distances are measured in, and the channels of every pixel under it, made by channels when first needed.
+     */
+    private ColorMetric metric = ColorMetric.RGB;
+    private int[] channels;
+    private ColorMetric channelsMetric;
+    /**
+     * Number of image rows every initial edge task scores.
+     */
+    private static final int ROWS_PER_TASK = 16;
+    /**
+     * A bounded segment checks its budget every STOP_CHECK merges, a power of two.
+     */
+    private static final int STOP_CHECK = 64;
+    /**
+     * The deadline in System.nanoTime terms and the cancel flag of a bounded segment, whether one is running, and whether it was stopped.
+     * stopped is read by tile threads too.
+     */
+    private long deadline;
+    private AtomicBoolean cancel;
+    private boolean bounded = false;
+    private volatile boolean stopped = false;
+    /**
+     * The distance of the last merge, see getMergeCost.
+     */
+    private int mergeCost;
+    /**
+     * The previous frame while segment(int, Decomposor) runs, null otherwise.
+     */
+    private Decomposor previous;
+    /**
+     * Frame diff block size and tolerance, see setFrameDiff.
+     */
+    private int frameBlock = 16;
+    private int frameTolerance = 0;
+    /**
+     * Regions of the previous frame up to this many blocks in size are dissolved whole when they touch a changed block;
+     * larger ones only lose their pixels inside changed blocks, so a change next to the background does not free the background.
+     */
+    private static final int DISSOLVE_BLOCKS = 4;
+    /**
+     * Pixels started on their own by the last warm start.
+     */
+    private int freedPixels;
+    /**
+     * Buckets per pass of the radix sort of outputResults.
+     */
+    private static final int RADIX = 1<<16;
+    /**
+     * Scratch arrays of outputResults, one int per pixel, made on the first call: the root, then region index, of every pixel,
+     * a value per root, and the recolored image.
+     */
+    private int[] rootOf, byRoot, recolored;
+    /**
+     * The roots of the regions from largest to smallest, and their colors, as of the last recolor: the first regionCount of each.
+     */
+    private int[] regionRoots, regionColors;
+    private int regionCount;
+    /**
+     * Scratch of the radix sort, one int per region (sortKeys, sortedRoots, sortedKeys) or per bucket (radixCounts),
+     * and the region statistics with the writer they are printed through.
+     */
+    private int[] sortKeys, sortedRoots, sortedKeys, radixCounts;
+    private StringBuilder stats;
+    private PrintWriter statsOut;
+    /**
+     * Counters and phase timings of this decomposer.
+     */
+    private final SegmentationMetrics metrics;
+    /**
+     * Every union of the last segment call, and how many of them ds has had.
+     */
+    private MergeHistory history;
+    private int replayed;
+    /**
+     * Where results are looked up and added, null when caching is off.
+     */
+    private ResultCache cache;
+    /**
+     * The K of the result last read from the cache, and the SHA-256 of the pixels once the first cache key is made.
+     */
+    private int restoredK;
+    private byte[] pixelDigest;
+    /**
+     * Column offsets of the forward neighbors of a pixel: E and S, then SE and SW for 8-connectivity.
+     */
+    private static final int[] FORWARD_DW = {1, 0, 1, -1};
+    /**
+     * Row offsets of the forward neighbors of a pixel, in the same order as FORWARD_DW.
+     */
+    private static final int[] FORWARD_DH = {0, 1, 1, 1};
+
+    //
+    // constructor, read image from file
+    //
+    /**
+     * Constructor, used to read the image file specified in
+     * @param imgfile The location of the image
+     */
+    public Decomposor(String imgfile)
+    {
+      this.metrics = new SegmentationMetrics(imgfile);
+      metrics.begin(SegmentationMetrics.Phase.LOAD);
+      File imageFile = new File(imgfile);
+      try
+      {
+        this.image = ImageIO.read(imageFile);
+      }
+      catch(IOException e)
+      {
+        System.err.println("! Error: Failed to read "+imgfile+", error msg: "+e);
+        metrics.end();
+        return;
+      }
+      this.img_filename=imgfile.substring(0, imgfile.lastIndexOf('.')); //remember the filename
+      this.pixels=this.image.getRGB(0, 0, this.image.getWidth(), this.image.getHeight(), null, 0, this.image.getWidth()); //one pixel per id, row by row
+      metrics.scanned(pixels.length);
+      metrics.end();
+    }
+
+    /**
+     * Constructor for an image that is already in memory
+     * @param image The image to decompose
+     * @param name The filename to save results under, without .jpg or .png
+     */
+    public Decomposor(BufferedImage image, String name)
+    {
+      this.metrics = new SegmentationMetrics(name);
+      metrics.begin(SegmentationMetrics.Phase.LOAD);
+      this.image = image;
+      this.img_filename = name;
+      this.pixels=this.image.getRGB(0, 0, this.image.getWidth(), this.image.getHeight(), null, 0, this.image.getWidth()); //one pixel per id, row by row
+      metrics.scanned(pixels.length);
+      metrics.end();
+    }
+
+
+    //compute the average color of a region
+    /** 
+     * Returns the average color of the region rooted at root, from the color moments kept in the disjoint set, back in RGB
+     * @param root The root of the region to get the avg color of
+     * @return The average color, packed as 0xFFRRGGBB
+     */
+    private int computeAverageColor(int root)
+    {
+      long size = ds.getSize(root);
+      int r = (int)(ds.getSum(root,0)/size), g = (int)(ds.getSum(root,1)/size), b = (int)(ds.getSum(root,2)/size);
+      return 0xff000000|metric.toRGB((r<<16)|(g<<8)|b);//the moments are in the channels of the color metric
+    }
+    /** 
+     * Paints the image after recoloring
+     * @param g Graphics parameter to paint the image with
+     */
+    public void paint(Graphics g)
+    {
+      //12f8388e73ae05b92056865f9170525e
+      g.drawImage(this.image, 0, 0,this);
+    }
+}
+
@@ -0,0 +1,265 @@
+/**
+ * @author Ciprian (Andy) Triculescu
+ * CS310
+ * Fall 2017
+ */
+
+package imgseg;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Disjoint sets class, using union by size and path compression. Holds the data in an arraylist, and the members of every set
+ * as a circular linked list threaded through an int array, so a union splices two lists instead of copying elements.
+ * Every root also keeps the running color moments (per-channel sums and sums of squares) of its set,
+ * so statistics of a region are available without walking its elements.
+ */
+public class DisjointSets<T>
+{
+    /** 
+     * The array holding the sizes (negative) and pointers to unioned off locations
+     */
+    private int [ ] s;
+    /** 
+     * The data points, one per index
+     */
+    private ArrayList<T> data;
+    /** 
+     * The members of every set as a circular linked list, next[x] is the index after x. Swapping the successors of two roots joins their lists
+     */
+    private int [ ] next;
+    /** 
+     * The size of the sets, or amount of non-unioned sets remaining
+     */
+    private int setsSize;
+    /**
+     * Number of moments kept per element: the red, green and blue sums followed by the red, green and blue sums of squares.
+     */
+    private static final int MOMENTS = 6;
+    /**
+     * The color moments of every set, MOMENTS entries per element. Only the entries of roots are meaningful.
+     */
+    private long [ ] moments;
+    /**
+     * Constructor for DisjointsSets. Takes in parameter data, and makes a singleton disjoint set from each data point.
+     * The data is expected to be already deduplicated, every element gets its own set. Runs in one linear pass.
+     * @param data The data to use in our disjoint sets. 
+     */
+    public DisjointSets( ArrayList<T> data  )
+    {
+      this.data = new ArrayList<T>(data);
+      setsSize = data.size();
+      s = new int [data.size()];
+      next = new int [data.size()];
+      for(int i =0; i<s.length; i++){
+        s[i] = -1;
+        next[i] = i;
+      }
+      moments = new long [MOMENTS*s.length];
+    }
+
+    /**
+     * Sets the color moments of the singleton set x from the color of its only element.
+     * @param x The singleton set to initialize.
+     * @param red The red channel of the element.
+     * @param green The green channel of the element.
+     * @param blue The blue channel of the element.
+     * @throws IllegalArgumentException if x is out of bounds or is not a singleton root.
+     */
+    public void setMoments( int x, int red, int green, int blue )
+    {
+      if((x<0)||(x>=s.length)||(s[x]!=-1))
+        throw new IllegalArgumentException();
+      int base = MOMENTS*x;
+      moments[base] = red;
+      moments[base+1] = green;
+      moments[base+2] = blue;
+      moments[base+3] = (long)red*red;
+      moments[base+4] = (long)green*green;
+      moments[base+5] = (long)blue*blue;
+    }
+
+    /**
+     * Adds the moments of the absorbed root onto the moments of the surviving root. Runs in constant time.
+     * @param into The surviving root.
+     * @param from The absorbed root.
+     */
+    private void mergeMoments( int into, int from )
+    {
+      int a = MOMENTS*into, b = MOMENTS*from;
+      for(int i=0; i<MOMENTS; i++)
+        moments[a+i] += moments[b+i];
+    }
+
+    /**
+     * Union algorithm for root1, root2. Returns the index of where we choose the root to be between these two. 
+     * Algorithm taken from textbook, all we add to it is splicing the member lists and adding up the moments, both in constant time. 
+     * @param root1 The first root
+     * @param root2 The second root
+     * @throws IllegalArgumentException if either root is out of bounds, if either of which is not a root, or if they are equal. Can't union something to itself. 
+     * @return The new root chosen. 
+     */
+    public int union( int root1, int root2 )
+    {
+      if((root1<0)||(root1>=s.length)||(root2<0)||(root2>=s.length)||(s[root1]>=0)||(s[root2]>=0)||(root1==root2))//for out of bounds or illegal roots
+        throw new IllegalArgumentException();
+      if(s[root2]<s[root1]){
+        setsSize--;
+        splice(root2, root1);
+        s[root2] += s[root1];
+        s[root1] = root2;
+        mergeMoments(root2, root1);
+        return root2;
+      }
+      setsSize--;
+      splice(root1, root2);
+      s[root1]+=s[root2];
+      s[root2] = root1;
+      mergeMoments(root1, root2);
+      return root1;
+    }
+
+    /**
+     * Joins the member list of the absorbed root into the list of the surviving root by swapping their successors.
+     * @param into The surviving root.
+     * @param from The absorbed root.
+     */
+    private void splice( int into, int from )
+    {
+      int temp = next[into];
+      next[into] = next[from];
+      next[from] = temp;
+    }
+
+    /**
+     * Find algorithm to find where int x is rooted at. If it is negative it is a root so you return that index, otherwise iterate up through the parents to finally return when the root is reached.
+     * Every node on the way is pointed at its grandparent (path halving), so later finds get shorter.
+     * @param x The index to start searching at or to iterate through. 
+     * @return Where the initial x is rooted at. 
+     */
+    public int find( int x )
+    {
+      if((x<0)||(x>=s.length))
+        throw new IllegalArgumentException();
+      int pos = x;
+      while(s[pos] >= 0){
+        int parent = s[pos];
+        if(s[parent] >= 0)
+          s[pos] = s[parent];
+        pos = s[pos];
+      }
+      return pos;
+    }
+
+    /**
+     * Gets the root set of the argument root passed in. The collection is a view over the member list, so it costs nothing to get
+     * and reflects later unions into root.
+     * @param root The root to find and get the root set for. 
+     * @return The set root is rooted in/at, or null if root has been unioned off.
+     */
+    public AbstractCollection<T> get( final int root )
+    {
+      if((root<0)||(root>=s.length))
+        throw new IllegalArgumentException();
+      if(s[root] >= 0)
+        return null;//unioned off, no set here anymore
+      return new AbstractCollection<T>()
+      {
+        public int size()
+        {
+          return (s[root] < 0) ? -s[root] : 0;
+        }
+
+        public Iterator<T> iterator()
+        {
+          return new Iterator<T>()
+          {
+            /**
+             * How many members are left to visit.
+             */
+            private int left = size();
+            /**
+             * The index of the next member to return.
+             */
+            private int pos = root;
+
+            public boolean hasNext()
+            {
+              return left > 0;
+            }
+
+            public T next()
+            {
+              if(left == 0)
+                throw new NoSuchElementException();
+              T item = data.get(pos);
+              pos = next[pos];
+              left--;
+              return item;
+            }
+          };
+        }
+      };
+    }
+
+    /**
+     * Gets the number of elements in the set rooted at root.
+     * @param root The root of the set.
+     * @return The size of the set.
+     * @throws IllegalArgumentException if root is out of bounds or is not a root.
+     */
+    public int getSize( int root )
+    {
+      checkRoot(root);
+      return -s[root];
+    }
+
+    /**
+     * Gets the sum of one color channel over the set rooted at root.
+     * @param root The root of the set.
+     * @param channel 0 for red, 1 for green, 2 for blue.
+     * @return The channel sum.
+     * @throws IllegalArgumentException if root is out of bounds or is not a root.
+     */
+    public long getSum( int root, int channel )
+    {
+      checkRoot(root);
+      return moments[MOMENTS*root+channel];
+    }
+
+    /**
+     * Gets the sum of squares of one color channel over the set rooted at root.
+     * @param root The root of the set.
+     * @param channel 0 for red, 1 for green, 2 for blue.
+     * @return The channel sum of squares.
+     * @throws IllegalArgumentException if root is out of bounds or is not a root.
+     */
+    public long getSumOfSquares( int root, int channel )
+    {
+      checkRoot(root);
+      return moments[MOMENTS*root+3+channel];
+    }
+
+    /**
+     * Checks that root is in bounds and is a root.
+     * @param root The index to check.
+     * @throws IllegalArgumentException if root is out of bounds or is not a root.
+     */
+    private void checkRoot( int root )
+    {
+      if((root<0)||(root>=s.length)||(s[root]>=0))
+        throw new IllegalArgumentException();
+    }
+
+    /**
+     * Gets the length of arraylist sets, which cooresponds to the number of sets remaining that have not been unioned off. Will eventually be one after all are unioned. 
+     * @return The number of sets (roots) remaining. 
+     */
+    public int getNumSets()
+    {
+      return setsSize; 
+    }
+}
\ No newline at end of file
@@ -0,0 +1,84 @@
+/**
+ * @author Ciprian (Andy) Triculescu
+ * CS310
+ * Fall 2017
+ */
+
+package imgseg;
+
+import java.util.Arrays;
+
+/**
+ * A growable buffer of weighted edges between pixel ids, kept in parallel primitive arrays.
+ * Workers fill one buffer each, and the buffers are then drained into a SimilarityQueue in one pass.
+ */
+public class EdgeBuffer
+{
+    /**
+     * The distance of every edge
+     */
+    private int [ ] distances;
+    /**
+     * The first id of every edge
+     */
+    private int [ ] ps;
+    /**
+     * The second id of every edge
+     */
+    private int [ ] qs;
+    /**
+     * The number of edges in the buffer
+     */
+    private int size;
+
+    /**
+     * Constructor for an empty EdgeBuffer.
+     * @param capacity The number of edges it can hold before it has to grow.
+     */
+    public EdgeBuffer( int capacity )
+    {
+      capacity = Math.max(capacity, 1);
+      distances = new int [capacity];
+      ps = new int [capacity];
+      qs = new int [capacity];
+    }
+
+    /**
+     * Adds an edge to the end of the buffer.
+     * @param distance The distance between p and q.
+     * @param p The first id.
+     * @param q The second id.
+     */
+    public void add( int distance, int p, int q )
+    {
+      if(size == distances.length){
+        distances = Arrays.copyOf(distances, size*2);
+        ps = Arrays.copyOf(ps, size*2);
+        qs = Arrays.copyOf(qs, size*2);
+      }
+      distances[size] = distance;
+      ps[size] = p;
+      qs[size] = q;
+      size++;
+    }
+
+    /**
+     * Appends every edge of the buffer to pq without restoring heap order. Call pq.buildHeap once all buffers are drained.
+     * @param pq The queue to append to.
+     */
+    public void drainTo( SimilarityQueue pq )
+    {
+      for(int i=0; i<size; i++)
+        pq.append(distances[i], ps[i], qs[i]);
+      size = 0;
+    }
+
+    /**
+     * Gets the number of edges in the buffer.
+     * @return The number of edges.
+     */
+    public int size()
+    {
+      return size;
+    }
+}
@@ -0,0 +1,301 @@
+/**
+ * @author Ciprian (Andy) Triculescu
+ * CS310
+ * Fall 2017
+ */
+
+package imgseg;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Arrays;
+
+import javax.swing.JFrame;
+
+public class ImgSeg
+{
+    public static void main(String[] args)
+    {
+        if(args.length<2)
+        {
+            System.err.println("Usage: ImgSeg -k K[,K...] [-c 4|8] [-t tile_size [-tr tile_regions] [-p threads]] [-e greedy|rounds] [-pl levels [-compare]] [-z tolerance] [-dm rgb|lab|weighted:r,g,b] [-cache dir [-cm megabytes]] [-o png|isl|both] [-d milliseconds] [-m metrics.json] [-g] image_file\n       ImgSeg -k K[,K...] [options above] -b dir_or_list [-bj jobs] [-bm megapixels]\n       ImgSeg -k K[,K...] [-c 4|8] -ooc scratch_dir [-om megabytes] image_file\n       ImgSeg [options above] -serve port [-sw workers] [-sq queue] [-st timeout_ms] [-sp megapixels]\n       ImgSeg -k K[,K...] [options above] -f dir_or_list [-fb block_size] [-ft tolerance]\n\tK: number of segments, or a comma separated list to save every one of them from a single run (cut from the run to the smallest K, which with -t, -pl, -z or -e rounds can differ from a separate run at that K)\n\t-c: pixel connectivity, 8 by default\n\t-t: segment tile_size x tile_size tiles in parallel first, each down to tile_regions regions (default tile_size*tile_size/64)\n\t-p: number of tiles segmented at the same time, all cores by default\n\t-e: merge one most similar pair at a time (greedy, default) or many pairs per parallel round (rounds)\n\t-pl: segment a copy halved levels times first and refine its regions up to full resolution\n\t-compare: also run the exact greedy merge and report the time and error difference of the pyramid\n\t-z: first join neighboring pixels whose colors differ by at most tolerance per channel (0, the default: identical colors only; -1: off)\n\t-dm: color distance: squared RGB (rgb, default), CIELAB (lab), or RGB with a weight per channel (e.g. weighted:2,4,3); add --add-modules jdk.incubator.vector to java for SIMD\n\t-cache: keep results in dir and read them back instead of segmenting the same image with the same settings again\n\t-cm: most megabytes the cache keeps, least recently used results are deleted first, 1024 by default\n\t-o: save the recolored image (png, default), the region table and run-length encoded labels (isl, see LabelMap), or both\n\t-d: stop merging after this long and save the regions reached, which may be more than K\n\t-m: save the run's counters and phase timings as JSON\n\timage_file: *.jpg, *.png, etc\n\t-b: segment every image in a directory, or listed one per line in a file, in one pipelined run\n\t-bj: number of images segmented at the same time, all cores by default\n\t-bm: most megapixels in flight at once, sized to the heap by default\n\t-ooc: out-of-core mode for images bigger than the heap, keeps pixels and regions in scratch_dir and saves *.ppm\n\t-om: megabytes of the similarity queue kept in memory in out-of-core mode, 256 by default and at most 2047\n\t-serve: answer POST /segment?k=K[&format=png|isl][&timeout=ms] with the image as the body on a loopback port, see SegmentServer\n\t-sw: number of images the server segments at the same time, all cores by default\n\t-sq: number of admitted requests that may wait for a worker, 2*workers by default; any more get 429\n\t-st: longest a request may take in milliseconds, 30000 by default; the merge stops in time to send what it reached\n\t-sp: largest image the server accepts, in megapixels, checked before decoding; bigger ones get 413. By default what the heap holds with every worker busy\n\t-f: segment the frames of a video in order (file name order for a directory), each starting from the regions of the one before\n\t-fb: width and height of the blocks frames are compared in, 16 by default\n\t-ft: largest per channel difference between frames that is not a change, 0 by default");
+            return;
+        }
+
+        int[] Ks={2};
+        String img_name="";
+        boolean show_img=false;
+        int connectivity=8;
+        int tile_size=0;
+        int tile_regions=0;
+        int threads=Runtime.getRuntime().availableProcessors();
+        Decomposor.Engine engine=Decomposor.Engine.GREEDY;
+        String metrics_file=null;
+        String batch=null;
+        int levels=0;
+        int premerge=0;
+        String cache_dir=null;
+        long cache_mb=1024;
+        String output="png";
+        String distance="rgb";
+        long budget=-1;
+        String frames=null;
+        int frame_block=16;
+        int frame_tolerance=0;
+        int port=-1;
+        int server_workers=Runtime.getRuntime().availableProcessors();
+        int server_queue=-1;
+        long server_timeout=30000;
+        long server_pixels=-1;
+        boolean compare=false;
+        String scratch=null;
+        int queue_mb=256;
+        int jobs=Runtime.getRuntime().availableProcessors();
+        long max_pixels=Runtime.getRuntime().maxMemory()/BYTES_PER_PIXEL;
+
+        for(int i=0;i<args.length;i++)
+        {
+          if(args[i].toLowerCase().compareTo("-k")==0) Ks=parseKs(args[++i]);
+          else if(args[i].toLowerCase().compareTo("-g")==0) show_img=true;
+          else if(args[i].toLowerCase().compareTo("-c")==0) connectivity=Integer.parseInt(args[++i]);
+          else if(args[i].toLowerCase().compareTo("-t")==0) tile_size=Integer.parseInt(args[++i]);
+          else if(args[i].toLowerCase().compareTo("-tr")==0) tile_regions=Integer.parseInt(args[++i]);
+          else if(args[i].toLowerCase().compareTo("-p")==0) threads=Integer.parseInt(args[++i]);
+          else if(args[i].toLowerCase().compareTo("-e")==0) engine=Decomposor.Engine.valueOf(args[++i].toUpperCase());
+          else if(args[i].toLowerCase().compareTo("-m")==0) metrics_file=args[++i];
+          else if(args[i].toLowerCase().compareTo("-b")==0) batch=args[++i];
+          else if(args[i].toLowerCase().compareTo("-bj")==0) jobs=Integer.parseInt(args[++i]);
+          else if(args[i].toLowerCase().compareTo("-bm")==0) max_pixels=(long)(Double.parseDouble(args[++i])*1000000);
+          else if(args[i].toLowerCase().compareTo("-ooc")==0) scratch=args[++i];
+          else if(args[i].toLowerCase().compareTo("-om")==0) queue_mb=Integer.parseInt(args[++i]);
+          else if(args[i].toLowerCase().compareTo("-pl")==0) levels=Integer.parseInt(args[++i]);
+          else if(args[i].toLowerCase().compareTo("-compare")==0) compare=true;
+          else if(args[i].toLowerCase().compareTo("-z")==0) premerge=Integer.parseInt(args[++i]);
+          else if(args[i].toLowerCase().compareTo("-dm")==0) distance=args[++i].toLowerCase();
+          else if(args[i].toLowerCase().compareTo("-cache")==0) cache_dir=args[++i];
+          else if(args[i].toLowerCase().compareTo("-cm")==0) cache_mb=Long.parseLong(args[++i]);
+          else if(args[i].toLowerCase().compareTo("-o")==0) output=args[++i].toLowerCase();
+          else if(args[i].toLowerCase().compareTo("-d")==0) budget=Long.parseLong(args[++i]);
+          else if(args[i].toLowerCase().compareTo("-f")==0) frames=args[++i];
+          else if(args[i].toLowerCase().compareTo("-fb")==0) frame_block=Integer.parseInt(args[++i]);
+          else if(args[i].toLowerCase().compareTo("-ft")==0) frame_tolerance=Integer.parseInt(args[++i]);
+          else if(args[i].toLowerCase().compareTo("-serve")==0) port=Integer.parseInt(args[++i]);
+          else if(args[i].toLowerCase().compareTo("-sw")==0) server_workers=Integer.parseInt(args[++i]);
+          else if(args[i].toLowerCase().compareTo("-sq")==0) server_queue=Integer.parseInt(args[++i]);
+          else if(args[i].toLowerCase().compareTo("-st")==0) server_timeout=Long.parseLong(args[++i]);
+          else if(args[i].toLowerCase().compareTo("-sp")==0) server_pixels=(long)(Double.parseDouble(args[++i])*1000000);
+          else img_name=args[i];
+        }
+
+        if(!output.equals("png") && !output.equals("isl") && !output.equals("both"))
+        {
+          System.err.println("! Error: -o should be png, isl or both, current -o="+output);
+          System.exit(1);
+        }
+        final ColorMetric metric;
+        try
+        {
+          metric=ColorMetric.parse(distance);
+        }
+        catch(IllegalArgumentException ex)
+        {
+          System.err.println(ex.getMessage());
+          System.exit(1);
+          return;
+        }
+        final boolean save_png=!output.equals("isl"), save_labels=!output.equals("png");
+        final ResultCache cache=(cache_dir!=null) ? new ResultCache(new File(cache_dir), cache_mb<<20) : null;
+
+        if(batch!=null)
+        {
+          final int c=connectivity, ts=tile_size, tr=tile_regions, p=threads, pl=levels, z=premerge;
+          final Decomposor.Engine e=engine;
+          int failed=new BatchRunner(BatchRunner.listImages(batch), Ks, jobs, max_pixels){
+            protected void configure(Decomposor seg)
+            {
+              seg.setConnectivity(c);
+              seg.setEngine(e);
+              seg.setPyramid(pl);
+              seg.setPreMerge(z);
+              seg.setColorMetric(metric);
+              seg.setCache(cache);
+              seg.setOutput(save_png, save_labels);
+              if(ts>0)
+                seg.setTiling(ts, (tr>0) ? tr : Math.max(1, ts*ts/64), p);
+            }
+          }.run();
+          System.exit(failed>0 ? 1 : 0);
+        }
+
+        if(port>=0)
+        {
+          final int c=connectivity, ts=tile_size, tr=tile_regions, p=threads, pl=levels, z=premerge;
+          final Decomposor.Engine e=engine;
+          SegmentServer server=new SegmentServer(port, server_workers, (server_queue>=0) ? server_queue : 2*server_workers, server_timeout){
+            protected void configure(Decomposor seg)
+            {
+              seg.setConnectivity(c);
+              seg.setEngine(e);
+              seg.setPyramid(pl);
+              seg.setPreMerge(z);
+              seg.setColorMetric(metric);
+              seg.setCache(cache);
+              if(ts>0)
+                seg.setTiling(ts, (tr>0) ? tr : Math.max(1, ts*ts/64), p);
+            }
+          };
+          if(server_pixels>=0)
+            server.setMaxPixels(server_pixels);
+          try
+          {
+            server.start();
+          }
+          catch(IOException ex)
+          {
+            System.err.println("! Error: Failed to listen on port "+port+", error msg: "+ex);
+            System.exit(1);
+          }
+          System.err.println("- Listening on http://"+InetAddress.getLoopbackAddress().getHostAddress()+":"+server.getPort()+"/segment");
+          return;
+        }
+
+        if(frames!=null)
+        {
+          Decomposor previous=null;
+          for(File frame: BatchRunner.listImages(frames))
+          {
+            Decomposor seg = new Decomposor(frame.getPath());
+            if(seg.image==null)
+            {
+              previous=null;//the next frame starts over
+              continue;
+            }
+            seg.setVerbose(false);
+            seg.setConnectivity(connectivity);
+            seg.setEngine(engine);
+            seg.setPreMerge(premerge);
+            seg.setColorMetric(metric);
+            seg.setOutput(save_png, save_labels);
+            seg.setFrameDiff(frame_block, frame_tolerance);
+            long start=System.nanoTime();
+            boolean warm=previous!=null && previous.image.getWidth()==seg.image.getWidth() && previous.image.getHeight()==seg.image.getHeight();
+            if(warm)
+              seg.segment(Ks[0], previous);
+            else
+              seg.segment(Ks[0]);
+            long time=System.nanoTime()-start;
+            for(int i=Ks.length-1;i>=0;i--){ //the last cut leaves Ks[0] regions for the next frame to start from
+              seg.cut(Ks[i]);
+              seg.outputResults(Ks[i]);
+            }
+            System.err.println("- "+frame.getPath()+": segment="+time/1000000+"ms"
+              +(warm ? " re-merged "+String.format("%.1f", 100.0*seg.getFreedPixels()/(seg.image.getWidth()*seg.image.getHeight()))+"% of the pixels" : " from scratch"));
+            previous=seg;
+          }
+          return;
+        }
+
+        if(scratch!=null)
+        {
+          long queue_entries=((long)queue_mb<<20)/12;
+          if(queue_entries>SpillingQueue.MAX_CAPACITY)
+          {
+            System.err.println("! Error: -om should be at most "+(12L*SpillingQueue.MAX_CAPACITY>>20)+" megabytes, current -om="+queue_mb);
+            System.exit(1);
+          }
+          try(OutOfCoreSegmenter ooc = new OutOfCoreSegmenter(img_name, new File(scratch), (int)queue_entries))
+          {
+            ooc.setConnectivity(connectivity);
+            for(int i=Ks.length-1;i>=0;i--){ //from many regions to few, every K carries on merging where the last stopped
+              ooc.segment(Ks[i]);
+              ooc.outputResults(Ks[i]);
+            }
+          }
+          catch(IOException e)
+          {
+            System.err.println("! Error: Out-of-core segmentation of "+img_name+" failed, error msg: "+e);
+            System.exit(1);
+          }
+          return;
+        }
+
+        Decomposor seg = new Decomposor(img_name);
+        seg.getMetrics().register();
+        seg.setConnectivity(connectivity);
+        seg.setEngine(engine);
+        seg.setPyramid(levels);
+        seg.setPreMerge(premerge);
+        seg.setColorMetric(metric);
+        seg.setCache(cache);
+        seg.setOutput(save_png, save_labels);
+        if(tile_size>0)
+          seg.setTiling(tile_size, (tile_regions>0) ? tile_regions : Math.max(1, tile_size*tile_size/64), threads);
+        long start=System.nanoTime();
+        int reached=Ks[0];
+        if(budget>=0)
+        {
+          if(!seg.segment(Ks[0], budget, null))
+          {
+            reached=seg.getNumRegions();
+            System.err.println("- Stopped after "+budget+"ms at "+reached+" regions, merge cost "+seg.getMergeCost());
+          }
+        }
+        else
+          seg.segment(Ks[0]);
+        if(compare && levels>0)
+        {
+          long time=System.nanoTime()-start;
+          Decomposor exact = new Decomposor(img_name);
+          exact.setConnectivity(connectivity);
+          exact.setEngine(engine);
+          exact.setColorMetric(metric);
+          exact.setVerbose(false);
+          start=System.nanoTime();
+          exact.segment(Ks[0]);
+          long exact_time=System.nanoTime()-start;
+          System.err.println("- Pyramid: "+time/1000000+"ms error="+String.format("%.4g", seg.getError())
+            +", exact: "+exact_time/1000000+"ms error="+String.format("%.4g", exact.getError())
+            +", "+String.format("%.1f", (double)exact_time/Math.max(1, time))+"x faster, error "+String.format("%+.2f", 100*(seg.getError()/exact.getError()-1))+"%");
+        }
+        for(int i=Ks.length-1;i>=0;i--){ //from many regions to few, so every cut continues replaying the merge history where the last stopped
+          seg.cut(Math.max(Ks[i], reached));
+          seg.outputResults(Ks[i]);
+        }
+        if(metrics_file!=null)
+          seg.getMetrics().writeJson(metrics_file);
+
+        //display the image after segmentation
+        if(show_img)
+        {
+          JFrame frame = new JFrame("ImgSeg -k "+Ks[0]+" "+img_name);
+          frame.getContentPane().add(seg);
+          frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+          frame.setSize(seg.image.getWidth(), seg.image.getHeight());
+          frame.setVisible(true);
+        }
+    }
+
+    /**
+     * Rough heap bytes one pixel costs while it is segmented: the disjoint set and its moments, the queued pairs and the region graph.
+     */
+    private static final long BYTES_PER_PIXEL = 400;
+
+    /**
+     * Parses a comma separated list of K values, sorted from smallest to largest without duplicates.
+     * @param list The list, e.g. 2,8,32.
+     * @return The K values.
+     */
+    private static int[] parseKs(String list)
+    {
+        String[] parts = list.split(",");
+        int[] Ks = new int[parts.length];
+        for(int i=0;i<parts.length;i++)
+          Ks[i]=Integer.parseInt(parts[i].trim());
+        Arrays.sort(Ks);
+        int n=0;
+        for(int i=0;i<Ks.length;i++)
+          if(n==0 || Ks[n-1]!=Ks[i]) Ks[n++]=Ks[i];
+        return Arrays.copyOf(Ks, n);
+    }
+}
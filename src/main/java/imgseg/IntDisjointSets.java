@@ -0,0 +1,269 @@
+/**
+ * @author Ciprian (Andy) Triculescu
+ * CS310
+ * Fall 2017
+ */
+
+package imgseg;
+
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Disjoint sets over the dense integer ids 0..n-1, using union by size and path halving.
+ * Everything lives in flat primitive arrays, so there are no objects per element: the parent/size array,
+ * the color moments of every root and a circular linked list threading the members of each set.
+ */
+public class IntDisjointSets
+{
+    /**
+     * The array holding the sizes (negative) of roots and the parent pointers of everything else
+     */
+    private int [ ] s;
+    /**
+     * The members of every set as a circular linked list, next[x] is the member after x.
+     * Two lists are joined in constant time by swapping the successors of their roots.
+     */
+    private int [ ] next;
+    /**
+     * Number of moments kept per element: the red, green and blue sums followed by the red, green and blue sums of squares.
+     */
+    private static final int MOMENTS = 6;
+    /**
+     * The color moments of every set, MOMENTS entries per element. Only the entries of roots are meaningful.
+     */
+    private long [ ] moments;
+    /**
+     * The number of sets remaining
+     */
+    private int setsSize;
+
+    /**
+     * Constructor for IntDisjointSets, makes n singleton sets with ids 0..n-1.
+     * @param n The number of elements.
+     * @throws IllegalArgumentException if n is negative.
+     */
+    public IntDisjointSets( int n )
+    {
+      if(n<0)
+        throw new IllegalArgumentException();
+      s = new int [n];
+      next = new int [n];
+      for(int i=0; i<n; i++){
+        s[i] = -1;
+        next[i] = i;
+      }
+      moments = new long [MOMENTS*n];
+      setsSize = n;
+    }
+
+    /**
+     * Bulk constructor for a grid of pixels, makes one singleton set per packed RGB color with its moments already set.
+     * Runs in a single linear pass.
+     * @param colors The packed 0xRRGGBB color of every element, indexed by id.
+     */
+    public IntDisjointSets( int [ ] colors )
+    {
+      this(colors.length);
+      for(int i=0; i<colors.length; i++){
+        int base = MOMENTS*i;
+        long red = (colors[i]>>16)&0xff, green = (colors[i]>>8)&0xff, blue = colors[i]&0xff;
+        moments[base] = red;
+        moments[base+1] = green;
+        moments[base+2] = blue;
+        moments[base+3] = red*red;
+        moments[base+4] = green*green;
+        moments[base+5] = blue*blue;
+      }
+    }
+
+    /**
+     * Sets the color moments of the singleton set x from the color of its only element.
+     * @param x The singleton set to initialize.
+     * @param red The red channel of the element.
+     * @param green The green channel of the element.
+     * @param blue The blue channel of the element.
+     * @throws IllegalArgumentException if x is out of bounds or is not a singleton root.
+     */
+    public void setMoments( int x, int red, int green, int blue )
+    {
+      if((x<0)||(x>=s.length)||(s[x]!=-1))
+        throw new IllegalArgumentException();
+      int base = MOMENTS*x;
+      moments[base] = red;
+      moments[base+1] = green;
+      moments[base+2] = blue;
+      moments[base+3] = (long)red*red;
+      moments[base+4] = (long)green*green;
+      moments[base+5] = (long)blue*blue;
+    }
+
+    /**
+     * Union by size of root1 and root2. The members and the moments of the smaller set are joined onto the larger one in constant time.
+     * @param root1 The first root
+     * @param root2 The second root
+     * @throws IllegalArgumentException if either root is out of bounds, if either of which is not a root, or if they are equal.
+     * @return The new root chosen.
+     */
+    public int union( int root1, int root2 )
+    {
+      int root = link(root1, root2);
+      setsSize--;
+      return root;
+    }
+
+    /**
+     * Unions many pairs of roots at once, in parallel. No root may appear in more than one pair, so every union touches its own
+     * entries only and they can all run at the same time; the set count is adjusted once at the end.
+     * @param roots1 The first root of every pair.
+     * @param roots2 The second root of every pair.
+     * @param count The number of pairs.
+     * @throws IllegalArgumentException if a root is out of bounds, is not a root, or is paired with itself.
+     * @return The new root of every pair.
+     */
+    public int [ ] unionAll( final int [ ] roots1, final int [ ] roots2, int count )
+    {
+      final int [ ] result = new int [count];
+      IntStream.range(0, count).parallel().forEach(new IntConsumer(){
+        public void accept( int i )
+        {
+          result[i] = link(roots1[i], roots2[i]);
+        }
+      });
+      setsSize -= count;
+      return result;
+    }
+
+    /**
+     * Links two roots by size, joining their members and moments, without touching the set count.
+     * @return The new root chosen.
+     */
+    private int link( int root1, int root2 )
+    {
+      if((root1<0)||(root1>=s.length)||(root2<0)||(root2>=s.length)||(s[root1]>=0)||(s[root2]>=0)||(root1==root2))
+        throw new IllegalArgumentException();
+      if(s[root2]<s[root1]){
+        int temp = root1;
+        root1 = root2;
+        root2 = temp;
+      }
+      s[root1] += s[root2];
+      s[root2] = root1;
+      int temp = next[root1];
+      next[root1] = next[root2];
+      next[root2] = temp;
+      int a = MOMENTS*root1, b = MOMENTS*root2;
+      for(int i=0; i<MOMENTS; i++)
+        moments[a+i] += moments[b+i];
+      return root1;
+    }
+
+    /**
+     * Finds the root of x. Every node on the way is pointed at its grandparent (path halving), which keeps later finds near constant.
+     * Finds may run concurrently with each other as long as no union runs at the same time, since halving only ever points a node at one of its ancestors.
+     * @param x The element to find the root of.
+     * @return The root of the set x is in.
+     * @throws IllegalArgumentException if x is out of bounds.
+     */
+    public int find( int x )
+    {
+      if((x<0)||(x>=s.length))
+        throw new IllegalArgumentException();
+      while(s[x] >= 0){
+        int parent = s[x];
+        if(s[parent] >= 0)
+          s[x] = s[parent];
+        x = s[x];
+      }
+      return x;
+    }
+
+    /**
+     * Gets the members of the set rooted at root.
+     * @param root The root of the set.
+     * @return A new array with the ids of every member, starting with root.
+     * @throws IllegalArgumentException if root is out of bounds or is not a root.
+     */
+    public int [ ] get( int root )
+    {
+      checkRoot(root);
+      int [ ] members = new int [-s[root]];
+      int x = root;
+      for(int i=0; i<members.length; i++){
+        members[i] = x;
+        x = next[x];
+      }
+      return members;
+    }
+
+    /**
+     * Gets the member after x in the circular member list of its set. Walking from a root until it comes back visits the whole set without allocating.
+     * @param x The current member.
+     * @return The next member.
+     * @throws IllegalArgumentException if x is out of bounds.
+     */
+    public int next( int x )
+    {
+      if((x<0)||(x>=s.length))
+        throw new IllegalArgumentException();
+      return next[x];
+    }
+
+    /**
+     * Gets the number of elements in the set rooted at root.
+     * @param root The root of the set.
+     * @return The size of the set.
+     * @throws IllegalArgumentException if root is out of bounds or is not a root.
+     */
+    public int getSize( int root )
+    {
+      checkRoot(root);
+      return -s[root];
+    }
+
+    /**
+     * Gets the sum of one color channel over the set rooted at root.
+     * @param root The root of the set.
+     * @param channel 0 for red, 1 for green, 2 for blue.
+     * @return The channel sum.
+     * @throws IllegalArgumentException if root is out of bounds or is not a root.
+     */
+    public long getSum( int root, int channel )
+    {
+      checkRoot(root);
+      return moments[MOMENTS*root+channel];
+    }
+
+    /**
+     * Gets the sum of squares of one color channel over the set rooted at root.
+     * @param root The root of the set.
+     * @param channel 0 for red, 1 for green, 2 for blue.
+     * @return The channel sum of squares.
+     * @throws IllegalArgumentException if root is out of bounds or is not a root.
+     */
+    public long getSumOfSquares( int root, int channel )
+    {
+      checkRoot(root);
+      return moments[MOMENTS*root+3+channel];
+    }
+
+    /**
+     * Checks that root is in bounds and is a root.
+     * @param root The index to check.
+     * @throws IllegalArgumentException if root is out of bounds or is not a root.
+     */
+    private void checkRoot( int root )
+    {
+      if((root<0)||(root>=s.length)||(s[root]>=0))
+        throw new IllegalArgumentException();
+    }
+
+    /**
+     * Gets the number of sets remaining. Will eventually be one after all are unioned.
+     * @return The number of sets (roots) remaining.
+     */
+    public int getNumSets()
+    {
+      return setsSize;
+    }
+}
@@ -0,0 +1,251 @@
+/**
+ * @author Ciprian (Andy) Triculescu
+ * CS310
+ * Fall 2017
+ */
+
+package imgseg;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A segmentation saved as a region table and a run-length encoded label raster, for tools that want the regions themselves
+ * rather than re-deriving them from the colors of a PNG. All numbers are little endian:
+ * <pre>
+ * header:  "ISL1" width height regions labelBytes runs                    6 ints
+ * regions: root size color minX minY maxX maxY                            7 ints per region, color packed as 0xRRGGBB
+ * runs:    label length                                                   labelBytes + 4 bytes per run
+ * </pre>
+ * The runs cover the pixels row by row and may go on across rows. labelBytes is 1, 2 or 4, the fewest that hold every region index.
+ * Files are written through a FileChannel and a direct buffer, and read back by mapping them: the accessors read straight
+ * out of the mapping without copying the file. The mapping is released when the LabelMap is garbage collected.
+ */
+public class LabelMap
+{
+    /**
+     * Writes a segmentation.
+     * @param file The file to write.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param labels The region index of every pixel, row by row.
+     * @param roots The root id of every region.
+     * @param colors The packed 0xRRGGBB average color of every region.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void write(File file, int width, int height, int[] labels, int[] roots, int[] colors) throws IOException
+    {
+      try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+      {
+        write(channel, width, height, labels, roots, colors);
+      }
+    }
+
+    /**
+     * Writes a segmentation to a channel, as write to a file does.
+     * @param channel The channel to write to, left open.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param labels The region index of every pixel, row by row.
+     * @param roots The root id of every region.
+     * @param colors The packed 0xRRGGBB average color of every region.
+     * @throws IOException if writing to the channel fails.
+     */
+    public static void write(WritableByteChannel channel, int width, int height, int[] labels, int[] roots, int[] colors) throws IOException
+    {
+      int regions = roots.length;
+      int[] sizes = new int[regions];
+      int[] box = new int[4*regions];//minX minY maxX maxY
+      for(int r=0; r<regions; r++){
+        box[4*r] = width;
+        box[4*r+1] = height;
+        box[4*r+2] = -1;
+        box[4*r+3] = -1;
+      }
+      int runs = 0;
+      for(int y=0, id=0; y<height; y++)
+        for(int x=0; x<width; x++, id++){
+          int r = labels[id];
+          sizes[r]++;
+          if(x < box[4*r]) box[4*r] = x;
+          if(y < box[4*r+1]) box[4*r+1] = y;
+          if(x > box[4*r+2]) box[4*r+2] = x;
+          if(y > box[4*r+3]) box[4*r+3] = y;
+          if(id == 0 || labels[id-1] != r)
+            runs++;
+        }
+      int labelBytes = labelBytes(regions);
+      ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+      buffer.putInt(MAGIC).putInt(width).putInt(height).putInt(regions).putInt(labelBytes).putInt(runs);
+      for(int r=0; r<regions; r++){
+        if(buffer.remaining() < REGION) drain(channel, buffer);
+        buffer.putInt(roots[r]).putInt(sizes[r]).putInt(colors[r]&0xffffff);
+        buffer.putInt(box[4*r]).putInt(box[4*r+1]).putInt(box[4*r+2]).putInt(box[4*r+3]);
+      }
+      for(int id=0; id<labels.length; ){
+        int r = labels[id], end = id+1;
+        while(end < labels.length && labels[end] == r)
+          end++;
+        if(buffer.remaining() < labelBytes+4) drain(channel, buffer);
+        if(labelBytes == 1) buffer.put((byte)r);
+        else if(labelBytes == 2) buffer.putShort((short)r);
+        else buffer.putInt(r);
+        buffer.putInt(end-id);
+        id = end;
+      }
+      drain(channel, buffer);
+    }
+
+    /**
+     * Opens a segmentation written by write, mapping the whole file.
+     * @param file The file to read.
+     * @throws IOException if the file cannot be read or is not a label map.
+     */
+    public LabelMap(File file) throws IOException
+    {
+      try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+      {
+        if(channel.size() > Integer.MAX_VALUE)
+          throw new IOException("label map over 2GB: "+file);
+        map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());//the mapping outlives the channel
+      }
+      map.order(ByteOrder.LITTLE_ENDIAN);
+      if(map.capacity() < HEADER || map.getInt(0) != MAGIC)
+        throw new IOException("not a label map: "+file);
+      width = map.getInt(4);
+      height = map.getInt(8);
+      regions = map.getInt(12);
+      labelBytes = map.getInt(16);
+      runs = map.getInt(20);
+      runsStart = HEADER+(long)REGION*regions;
+      if(runsStart+(long)(labelBytes+4)*runs != map.capacity())
+        throw new IOException("truncated label map: "+file);
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+
+    /**
+     * @return The number of regions.
+     */
+    public int getNumRegions() { return regions; }
+
+    /**
+     * @param r The index of a region.
+     * @return The root id the region had in the disjoint set.
+     */
+    public int getRoot(int r) { return region(r, 0); }
+
+    /**
+     * @param r The index of a region.
+     * @return The number of pixels in the region.
+     */
+    public int getSize(int r) { return region(r, 1); }
+
+    /**
+     * @param r The index of a region.
+     * @return The packed 0xRRGGBB average color of the region.
+     */
+    public int getColor(int r) { return region(r, 2); }
+
+    /**
+     * The bounding box of a region, inclusive.
+     * @param r The index of a region.
+     * @return The smallest column, smallest row, largest column or largest row holding a pixel of the region.
+     */
+    public int getMinX(int r) { return region(r, 3); }
+    public int getMinY(int r) { return region(r, 4); }
+    public int getMaxX(int r) { return region(r, 5); }
+    public int getMaxY(int r) { return region(r, 6); }
+
+    /**
+     * @return The number of runs in the label raster.
+     */
+    public int getNumRuns() { return runs; }
+
+    /**
+     * @param i The index of a run, in raster order.
+     * @return The region index of the run.
+     */
+    public int getRunLabel(int i)
+    {
+      int offset = runOffset(i);
+      return (labelBytes == 1) ? map.get(offset)&0xff : (labelBytes == 2) ? map.getShort(offset)&0xffff : map.getInt(offset);
+    }
+
+    /**
+     * @param i The index of a run, in raster order.
+     * @return The number of pixels in the run.
+     */
+    public int getRunLength(int i)
+    {
+      return map.getInt(runOffset(i)+labelBytes);
+    }
+
+    /**
+     * Expands the runs into the region index of every pixel, row by row.
+     * @param labels An array of at least width*height ints to fill, or null.
+     * @return labels, or a new array if it was null.
+     */
+    public int[] getLabels(int[] labels)
+    {
+      if(labels == null)
+        labels = new int[width*height];
+      for(int i=0, id=0; i<runs; i++){
+        int label = getRunLabel(i), end = id+getRunLength(i);
+        while(id < end)
+          labels[id++] = label;
+      }
+      return labels;
+    }
+
+    private int region(int r, int field)
+    {
+      if(r < 0 || r >= regions)
+        throw new IndexOutOfBoundsException("! Error: no region "+r+", there are "+regions);
+      return map.getInt(HEADER+REGION*r+4*field);
+    }
+
+    private int runOffset(int i)
+    {
+      if(i < 0 || i >= runs)
+        throw new IndexOutOfBoundsException("! Error: no run "+i+", there are "+runs);
+      return (int)(runsStart+(long)(labelBytes+4)*i);
+    }
+
+    private static void drain(WritableByteChannel channel, ByteBuffer buffer) throws IOException
+    {
+      buffer.flip();
+      while(buffer.hasRemaining())
+        channel.write(buffer);
+      buffer.clear();
+    }
+
+    /**
+     * Bytes per label for a number of regions, also used by ResultCache.
+     */
+    static int labelBytes(int regions)
+    {
+      return (regions <= 1<<8) ? 1 : (regions <= 1<<16) ? 2 : 4;
+    }
+
+    /**
+     * Start of every file, "ISL1" when read as little endian bytes.
+     */
+    private static final int MAGIC = 0x314c5349;
+    /**
+     * Bytes of the header, of a region and of the write buffer.
+     */
+    private static final int HEADER = 24;
+    private static final int REGION = 28;
+    private static final int BUFFER = 1<<16;
+    private final MappedByteBuffer map;
+    private final int width, height, regions, labelBytes, runs;
+    private final long runsStart;
+}
@@ -0,0 +1,107 @@
+/**
+ * @author Ciprian (Andy) Triculescu
+ * CS310
+ * Fall 2017
+ */
+
+package imgseg;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A scratch file mapped into memory as one flat array of ints or longs, for arrays too big for the heap.
+ * A single MappedByteBuffer stops at 2GB, so the file is mapped in chunks of CHUNK bytes; an element never straddles two chunks.
+ * The operating system pages the file in and out, so only the pages being worked on take memory. The file is deleted on close.
+ */
+class MappedFile implements Closeable
+{
+    /**
+     * Creates and maps a zero filled scratch file.
+     * @param dir The directory to create the file in.
+     * @param prefix The start of the file name.
+     * @param bytes The size of the file.
+     * @throws IOException if the file cannot be created or mapped.
+     */
+    MappedFile(File dir, String prefix, long bytes) throws IOException
+    {
+      file = File.createTempFile(prefix, ".bin", dir);
+      file.deleteOnExit();
+      RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      raf.setLength(Math.max(bytes, 8));
+      channel = raf.getChannel();
+      chunks = new MappedByteBuffer[(int)((Math.max(bytes, 8)+CHUNK-1)/CHUNK)];
+      for(int c=0; c<chunks.length; c++){
+        long offset = (long)c*CHUNK;
+        chunks[c] = channel.map(FileChannel.MapMode.READ_WRITE, offset, Math.min(CHUNK, Math.max(bytes, 8)-offset));
+        chunks[c].order(ByteOrder.nativeOrder());
+      }
+    }
+
+    /**
+     * @param i The index of an int.
+     * @return The int at i.
+     */
+    int getInt(long i)
+    {
+      long offset = i<<2;
+      return chunks[(int)(offset>>>SHIFT)].getInt((int)(offset&MASK));
+    }
+
+    /**
+     * @param i The index of an int.
+     * @param value The int to store at i.
+     */
+    void putInt(long i, int value)
+    {
+      long offset = i<<2;
+      chunks[(int)(offset>>>SHIFT)].putInt((int)(offset&MASK), value);
+    }
+
+    /**
+     * @param i The index of a long.
+     * @return The long at i.
+     */
+    long getLong(long i)
+    {
+      long offset = i<<3;
+      return chunks[(int)(offset>>>SHIFT)].getLong((int)(offset&MASK));
+    }
+
+    /**
+     * @param i The index of a long.
+     * @param value The long to store at i.
+     */
+    void putLong(long i, long value)
+    {
+      long offset = i<<3;
+      chunks[(int)(offset>>>SHIFT)].putLong((int)(offset&MASK), value);
+    }
+
+    /**
+     * Closes and deletes the file. The mappings stay valid until they are garbage collected, but must not be used any more.
+     */
+    public void close() throws IOException
+    {
+      channel.close();
+      file.delete();
+    }
+
+    /**
+     * Log2 of the bytes per mapping, 1GB.
+     */
+    private static final int SHIFT = 30;
+    private static final long CHUNK = 1L<<SHIFT;
+    private static final long MASK = CHUNK-1;
+    /**
+     * The scratch file, its channel and its mappings.
+     */
+    private final File file;
+    private final FileChannel channel;
+    private final MappedByteBuffer[] chunks;
+}
@@ -0,0 +1,126 @@
+/**
+ * @author Ciprian (Andy) Triculescu
+ * CS310
+ * Fall 2017
+ */
+
+package imgseg;
+
+import java.util.Arrays;
+
+/**
+ * The merge history of a segmentation: every union done on the disjoint set of the whole image, in order, as the two roots that were unioned
+ * and the distance they were merged at. Replaying the first i unions onto a fresh disjoint set of the same pixels rebuilds the exact partition
+ * the segmentation had after i merges, so one run can be cut at any number of regions between the number it started and stopped at.
+ */
+public class MergeHistory
+{
+    /**
+     * Constructor for the history of an image of n pixels.
+     * @param n The number of pixels, which is also the number of regions before the first merge.
+     */
+    public MergeHistory(int n)
+    {
+      this.n = n;
+      roots1 = new int[16];
+      roots2 = new int[16];
+      distances = new int[16];
+    }
+
+    /**
+     * Appends a union to the history.
+     * @param root1 The first root passed to union.
+     * @param root2 The second root passed to union.
+     * @param distance The distance the two regions were merged at, or -1 if it is not known (merges folded in from tiles).
+     */
+    void add(int root1, int root2, int distance)
+    {
+      if(size == roots1.length){
+        roots1 = Arrays.copyOf(roots1, 2*size);
+        roots2 = Arrays.copyOf(roots2, 2*size);
+        distances = Arrays.copyOf(distances, 2*size);
+      }
+      roots1[size] = root1;
+      roots2[size] = root2;
+      distances[size] = distance;
+      size++;
+    }
+
+    /**
+     * Replays unions from the history onto ds, starting at union from, until ds has K regions or the history runs out.
+     * ds has to be in the state it was in after the first from unions, e.g. a fresh disjoint set of the pixels and from 0.
+     * @param ds The disjoint set to union in.
+     * @param from The index of the first union to replay.
+     * @param K The number of regions to stop at.
+     * @return The index of the first union not replayed, to continue from later.
+     */
+    public int replay(IntDisjointSets ds, int from, int K)
+    {
+      while(from < size && ds.getNumSets() > K){
+        ds.union(ds.find(roots1[from]), ds.find(roots2[from]));
+        from++;
+      }
+      return from;
+    }
+
+    /**
+     * Returns the number of unions recorded.
+     * @return The number of unions.
+     */
+    public int size()
+    {
+      return size;
+    }
+
+    /**
+     * Returns the fewest regions the history can be cut at, the number the segmentation stopped at.
+     * @return The number of regions after the last union.
+     */
+    public int getMinRegions()
+    {
+      return n-size;
+    }
+
+    /**
+     * Returns the first root of union i.
+     * @param i The index of the union.
+     * @return The root.
+     */
+    public int getRoot1(int i)
+    {
+      return roots1[i];
+    }
+
+    /**
+     * Returns the second root of union i.
+     * @param i The index of the union.
+     * @return The root.
+     */
+    public int getRoot2(int i)
+    {
+      return roots2[i];
+    }
+
+    /**
+     * Returns the distance union i was merged at, the height of that node in the dendrogram.
+     * @param i The index of the union.
+     * @return The distance, or -1 if not known.
+     */
+    public int getDistance(int i)
+    {
+      return distances[i];
+    }
+
+    /**
+     * The number of pixels.
+     */
+    private final int n;
+    /**
+     * The number of unions recorded.
+     */
+    private int size;
+    /**
+     * The two roots and the distance of every union, in the order they were done.
+     */
+    private int[] roots1, roots2, distances;
+}
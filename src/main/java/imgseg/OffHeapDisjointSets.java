@@ -0,0 +1,167 @@
+/**
+ * @author Ciprian (Andy) Triculescu
+ * CS310
+ * Fall 2017
+ */
+
+package imgseg;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Disjoint sets over the dense integer ids 0..n-1 like IntDisjointSets, using union by size and path halving,
+ * but with the parent/size array and the color moments in memory-mapped scratch files instead of on the heap.
+ * There is no member list; the members of a set are found by scanning the ids.
+ */
+public class OffHeapDisjointSets implements Closeable
+{
+    /**
+     * The sizes (negative) of roots and the parent pointers of everything else, one int per id
+     */
+    private final MappedFile s;
+    /**
+     * Number of moments kept per element: the red, green and blue sums followed by the red, green and blue sums of squares.
+     */
+    private static final int MOMENTS = 6;
+    /**
+     * The color moments of every set, MOMENTS longs per id. Only the entries of roots are meaningful.
+     */
+    private final MappedFile moments;
+    /**
+     * The number of ids
+     */
+    private final int n;
+    /**
+     * The number of sets remaining
+     */
+    private int setsSize;
+
+    /**
+     * Constructor, makes one singleton set per pixel with its moments set from its packed 0xRRGGBB color.
+     * @param pixels The color of every id, one int per id.
+     * @param n The number of ids.
+     * @param dir The directory for the scratch files.
+     * @throws IOException if the scratch files cannot be created.
+     */
+    public OffHeapDisjointSets( MappedFile pixels, int n, File dir ) throws IOException
+    {
+      this.n = n;
+      s = new MappedFile(dir, "parents", 4L*n);
+      moments = new MappedFile(dir, "moments", 8L*MOMENTS*n);
+      for(int i=0; i<n; i++){
+        s.putInt(i, -1);
+        int color = pixels.getInt(i);
+        long red = (color>>16)&0xff, green = (color>>8)&0xff, blue = color&0xff;
+        long base = (long)MOMENTS*i;
+        moments.putLong(base, red);
+        moments.putLong(base+1, green);
+        moments.putLong(base+2, blue);
+        moments.putLong(base+3, red*red);
+        moments.putLong(base+4, green*green);
+        moments.putLong(base+5, blue*blue);
+      }
+      setsSize = n;
+    }
+
+    /**
+     * Union by size of root1 and root2, adding the moments of the smaller set to the larger one.
+     * @param root1 The first root
+     * @param root2 The second root
+     * @throws IllegalArgumentException if either of which is not a root, or if they are equal.
+     * @return The new root chosen.
+     */
+    public int union( int root1, int root2 )
+    {
+      checkRoot(root1);
+      checkRoot(root2);
+      if(root1 == root2)
+        throw new IllegalArgumentException();
+      int size1 = s.getInt(root1), size2 = s.getInt(root2);
+      int root = (size2 < size1) ? root2 : root1;//sizes are negative, the tie goes to root1 as in IntDisjointSets
+      int child = (root == root1) ? root2 : root1;
+      s.putInt(root, size1+size2);
+      s.putInt(child, root);
+      long to = (long)MOMENTS*root, from = (long)MOMENTS*child;
+      for(int m=0; m<MOMENTS; m++)
+        moments.putLong(to+m, moments.getLong(to+m)+moments.getLong(from+m));
+      setsSize--;
+      return root;
+    }
+
+    /**
+     * Finds the root of x with path halving.
+     * @param x The id to find.
+     * @throws IllegalArgumentException if x is out of bounds.
+     * @return The root of x.
+     */
+    public int find( int x )
+    {
+      if((x<0)||(x>=n))
+        throw new IllegalArgumentException();
+      int parent = s.getInt(x);
+      while(parent >= 0){
+        int grandparent = s.getInt(parent);
+        if(grandparent < 0)
+          return parent;
+        s.putInt(x, grandparent);
+        x = grandparent;
+        parent = s.getInt(x);
+      }
+      return x;
+    }
+
+    /**
+     * @param root The root of a set.
+     * @return The number of members of the set.
+     */
+    public int getSize( int root )
+    {
+      checkRoot(root);
+      return -s.getInt(root);
+    }
+
+    /**
+     * @param root The root of a set.
+     * @param channel 0 for red, 1 for green, 2 for blue.
+     * @return The sum of the channel over the members of the set.
+     */
+    public long getSum( int root, int channel )
+    {
+      return moments.getLong((long)MOMENTS*root+channel);
+    }
+
+    /**
+     * @param root The root of a set.
+     * @param channel 0 for red, 1 for green, 2 for blue.
+     * @return The sum of the squares of the channel over the members of the set.
+     */
+    public long getSumOfSquares( int root, int channel )
+    {
+      return moments.getLong((long)MOMENTS*root+3+channel);
+    }
+
+    /**
+     * @return The number of sets remaining.
+     */
+    public int getNumSets()
+    {
+      return setsSize;
+    }
+
+    /**
+     * Deletes the scratch files.
+     */
+    public void close() throws IOException
+    {
+      s.close();
+      moments.close();
+    }
+
+    private void checkRoot( int x )
+    {
+      if((x<0)||(x>=n)||(s.getInt(x)>=0))
+        throw new IllegalArgumentException();
+    }
+}
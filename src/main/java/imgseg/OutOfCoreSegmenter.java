@@ -0,0 +1,333 @@
+/**
+ * @author Ciprian (Andy) Triculescu
+ * CS310
+ * Fall 2017
+ */
+
+package imgseg;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Greedy segmentation of images too big for the heap, e.g. satellite and slide scans. Same merge order as Decomposor's greedy engine,
+ * but the pixels, the disjoint set and its moments live in memory-mapped scratch files, and the similarity queue is a SpillingQueue
+ * that keeps a fixed number of entries in memory and spills sorted runs to disk. The heap only holds a strip of the image at a time.
+ *
+ * There is no region adjacency graph and no addressable queue: the queue holds the similarity of every pair of neighboring pixels,
+ * and an entry whose regions grew since it was queued is rescored when it comes out. Merging two regions never makes the merged region
+ * closer to a neighbor than either part was (the sum of squared differences of a union only grows as it takes in more pixels),
+ * so a queued distance is never more than the current one. An entry that comes out with its distance still current is therefore
+ * the most similar pair overall; one that is out of date is queued again with its current distance.
+ *
+ * Input is read as a binary PPM (P6) in a single pass, or with ImageIO one strip of rows at a time for other formats.
+ * Results are written as binary PPM, which can be streamed row by row.
+ */
+public class OutOfCoreSegmenter implements Closeable
+{
+    /**
+     * Constructor, copies the pixels of an image into a memory-mapped scratch file.
+     * @param imgfile The location of the image.
+     * @param dir The directory for the scratch files, on a local disk with room for about 60 bytes per pixel plus the spilled queue.
+     * @param queueEntries The number of queue entries kept in memory, 12 bytes each.
+     * @throws IOException if the image cannot be read or the scratch files cannot be created.
+     * @throws IllegalArgumentException if the image has more than Integer.MAX_VALUE pixels.
+     */
+    public OutOfCoreSegmenter(String imgfile, File dir, int queueEntries) throws IOException
+    {
+      this.dir = dir;
+      this.queueEntries = queueEntries;
+      this.img_filename = (imgfile.lastIndexOf('.') > 0) ? imgfile.substring(0, imgfile.lastIndexOf('.')) : imgfile;
+      String lower = imgfile.toLowerCase();
+      if(lower.endsWith(".ppm") || lower.endsWith(".pnm"))
+        readPpm(new File(imgfile));
+      else
+        readStrips(new File(imgfile));
+    }
+
+    /**
+     * Sets which pixels count as neighbors: 4 for pixels sharing an edge only, 8 to include the diagonal ones. Defaults to 8.
+     * @param connectivity 4 or 8.
+     * @throws IllegalArgumentException if connectivity is not 4 or 8.
+     */
+    public void setConnectivity(int connectivity)
+    {
+      if(connectivity != 4 && connectivity != 8)
+        throw new IllegalArgumentException(new String("! Error: connectivity should be 4 or 8, current connectivity="+connectivity));
+      this.connectivity = connectivity;
+    }
+
+    /**
+     * Merges the most similar pair of adjacent regions until only K regions are left. Can be called again with a smaller K to carry on
+     * from where the last call stopped, so several K cost one run when asked for from many regions to few.
+     * @param K The number of regions to reduce to.
+     * @throws IOException if the scratch files fail.
+     */
+    public void segment(int K) throws IOException
+    {
+      if(K<2)
+        throw new IllegalArgumentException(new String("! Error: K should be greater than 1, current K="+K));
+      if(ds == null){
+        ds = new OffHeapDisjointSets(pixels, width*height, dir);
+        pq = new SpillingQueue(queueEntries, dir);
+        for(int h=0; h<height; h++){
+          for(int w=0; w<width; w++){
+            int id = width*h+w;
+            for(int k=0; k<connectivity/2; k++){
+              int nw = w+FORWARD_DW[k], nh = h+FORWARD_DH[k];
+              if(nw<0 || nw>=width || nh>=height) continue;
+              int nid = width*nh+nw;
+              pq.add(getSimilarity(ds,id,nid),id,nid);
+            }
+          }
+        }
+      }
+      int iter = 0;//number of iterations to update on progress
+      while(ds.getNumSets()>K && !pq.isEmpty()){
+        if(++iter == 1<<16){
+          tell_progress(K);
+          iter = 0;
+        }
+        int distance = pq.rootDistance();
+        int p = ds.find(pq.rootP());
+        int q = ds.find(pq.rootQ());
+        pq.remove();
+        if(p == q) continue;//already merged through another pair of pixels
+        int current = getSimilarity(ds,p,q);
+        if(current > distance){
+          pq.add(current,p,q);//one side grew since this was queued, try again at its current distance
+          continue;
+        }
+        ds.union(p,q);
+      }
+    }
+
+    /**
+     * Prints the regions by size like Decomposor.outputResults, and writes the image with every pixel in its region's average color
+     * to filename_seg_K.ppm, one row at a time.
+     * @param K The K regions remaining, used in the file name.
+     */
+    public void outputResults(int K)
+    {
+      ArrayList<long[]> regions = new ArrayList<long[]>();
+      for(int id=0; id<width*height; id++)
+        if(ds.find(id) == id)
+          regions.add(new long[]{ds.getSize(id), id});
+      Collections.sort(regions, new Comparator<long[]>(){
+        public int compare(long[] a, long[] b) {
+          if(a[0] != b[0]) return Long.compare(b[0], a[0]);
+          return Long.compare(b[1], a[1]);
+        }
+      });
+      for(int i=0; i<regions.size(); i++)
+        System.out.println("region " + (i+1) + " size= " + regions.get(i)[0] + " color=" + new Color(averageColor((int)regions.get(i)[1])).toString());
+
+      String out_filename = img_filename+"_seg_"+K+".ppm";
+      try(OutputStream out = new BufferedOutputStream(new FileOutputStream(out_filename), 1<<16))
+      {
+        out.write(("P6\n"+width+" "+height+"\n255\n").getBytes("US-ASCII"));
+        byte[] row = new byte[3*width];
+        for(int h=0; h<height; h++){
+          for(int w=0; w<width; w++){
+            int c = averageColor(ds.find(width*h+w));
+            row[3*w] = (byte)(c>>16);
+            row[3*w+1] = (byte)(c>>8);
+            row[3*w+2] = (byte)c;
+          }
+          out.write(row);
+        }
+        System.err.println("- Saved result to "+out_filename);
+      }
+      catch(IOException e)
+      {
+        System.err.println("! Error: Failed to save image to "+out_filename);
+      }
+    }
+
+    /**
+     * Deletes the scratch files.
+     */
+    public void close() throws IOException
+    {
+      if(pq != null) pq.close();
+      if(ds != null) ds.close();
+      pixels.close();
+    }
+
+    /**
+     * Same closed form as Decomposor.getSimilarity, over the moments of the off-heap disjoint set.
+     */
+    private static int getSimilarity(OffHeapDisjointSets ds, int root1, int root2)
+    {
+      long n1 = ds.getSize(root1);
+      long n2 = ds.getSize(root2);
+      long sumdiff = 0;
+      for(int channel=0; channel<3; channel++){
+        long sum1 = ds.getSum(root1, channel);
+        long sum2 = ds.getSum(root2, channel);
+        long c = ((sum1/n1)*n1 + (sum2/n2)*n2)/(n1+n2);
+        long sumsq = ds.getSumOfSquares(root1, channel) + ds.getSumOfSquares(root2, channel);
+        sumdiff += sumsq - 2*c*(sum1+sum2) + (n1+n2)*c*c;
+      }
+      return (int)Math.min(sumdiff, Integer.MAX_VALUE);
+    }
+
+    /**
+     * The average color of a region, packed as 0xRRGGBB.
+     */
+    private int averageColor(int root)
+    {
+      long size = ds.getSize(root);
+      return (int)((ds.getSum(root,0)/size)<<16 | (ds.getSum(root,1)/size)<<8 | ds.getSum(root,2)/size);
+    }
+
+    /**
+     * Same progress bar as Decomposor.
+     */
+    private void tell_progress(int K)
+    {
+      float progress = (100.0f*K)/ds.getNumSets();
+      int p = (int)Math.floor(progress);
+      String bar="["+(new String(new char[p]).replace("\0","*")) +(new String(new char[100-p]).replace("\0","-"))+"]";
+      System.err.print("Progress: "+String.format("%.02f",progress)+"% "+bar+"\r");
+    }
+
+    /**
+     * Maps a scratch file for width x height pixels.
+     */
+    private void allocate(long w, long h) throws IOException
+    {
+      if(w*h > Integer.MAX_VALUE || w < 1 || h < 1)
+        throw new IllegalArgumentException("! Error: image of "+w+"x"+h+" pixels is not supported");
+      width = (int)w;
+      height = (int)h;
+      pixels = new MappedFile(dir, "pixels", 4L*width*height);
+    }
+
+    /**
+     * Reads a binary PPM in one pass.
+     */
+    private void readPpm(File file) throws IOException
+    {
+      try(InputStream in = new BufferedInputStream(new FileInputStream(file), 1<<16))
+      {
+        if(!readToken(in).equals("P6"))
+          throw new IOException("! Error: "+file+" is not a binary PPM");
+        long w = Long.parseLong(readToken(in)), h = Long.parseLong(readToken(in));
+        if(Integer.parseInt(readToken(in)) > 255)
+          throw new IOException("! Error: "+file+" has 16 bit samples");
+        allocate(w, h);
+        byte[] row = new byte[3*width];
+        for(int y=0; y<height; y++){
+          for(int read=0; read<row.length; ){
+            int r = in.read(row, read, row.length-read);
+            if(r < 0)
+              throw new IOException("! Error: "+file+" is truncated");
+            read += r;
+          }
+          for(int x=0; x<width; x++)
+            pixels.putInt((long)width*y+x, (row[3*x]&0xff)<<16 | (row[3*x+1]&0xff)<<8 | (row[3*x+2]&0xff));
+        }
+      }
+    }
+
+    /**
+     * Reads one whitespace separated header token of a PPM, skipping comments; consumes the single whitespace after it.
+     */
+    private static String readToken(InputStream in) throws IOException
+    {
+      StringBuilder token = new StringBuilder();
+      for(int c = in.read(); c >= 0; c = in.read()){
+        if(c == '#' && token.length() == 0){
+          while(c >= 0 && c != '\n') c = in.read();
+        }
+        else if(Character.isWhitespace(c)){
+          if(token.length() > 0) return token.toString();
+        }
+        else
+          token.append((char)c);
+      }
+      return token.toString();
+    }
+
+    /**
+     * Reads any format ImageIO knows, STRIP_PIXELS pixels worth of rows at a time.
+     */
+    private void readStrips(File file) throws IOException
+    {
+      try(ImageInputStream in = ImageIO.createImageInputStream(file))
+      {
+        Iterator<ImageReader> readers = (in == null) ? null : ImageIO.getImageReaders(in);
+        if(readers == null || !readers.hasNext())
+          throw new IOException("! Error: Failed to read "+file+", no reader for it");
+        ImageReader reader = readers.next();
+        try{
+          reader.setInput(in);
+          allocate(reader.getWidth(0), reader.getHeight(0));
+          int rows = Math.max(1, STRIP_PIXELS/width);
+          ImageReadParam param = reader.getDefaultReadParam();
+          int[] strip = new int[rows*width];
+          for(int y=0; y<height; y+=rows){
+            int n = Math.min(rows, height-y);
+            param.setSourceRegion(new Rectangle(0, y, width, n));
+            BufferedImage part = reader.read(0, param);
+            part.getRGB(0, 0, width, n, strip, 0, width);
+            for(int i=0; i<n*width; i++)
+              pixels.putInt((long)width*y+i, strip[i]&0xffffff);
+          }
+        }
+        finally{
+          reader.dispose();
+        }
+      }
+    }
+
+    /**
+     * Pixels decoded per strip when reading through ImageIO.
+     */
+    private static final int STRIP_PIXELS = 1<<22;
+    /**
+     * Column and row offsets of the forward neighbors of a pixel: E and S, then SE and SW for 8-connectivity.
+     */
+    private static final int[] FORWARD_DW = {1, 0, 1, -1};
+    private static final int[] FORWARD_DH = {0, 1, 1, 1};
+    /**
+     * The directory for the scratch files.
+     */
+    private final File dir;
+    /**
+     * The number of queue entries kept in memory.
+     */
+    private final int queueEntries;
+    /**
+     * The input filename without its extension.
+     */
+    private final String img_filename;
+    private int width, height;
+    private int connectivity = 8;
+    /**
+     * The packed 0xRRGGBB color of every pixel, indexed by pixel id.
+     */
+    private MappedFile pixels;
+    private OffHeapDisjointSets ds;
+    private SpillingQueue pq;
+}
@@ -0,0 +1,35 @@
+/**
+ * @author Ciprian (Andy) Triculescu
+ * CS310
+ * Fall 2017
+ */
+
+package imgseg;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning one phase of a segmentation run. Costs nothing unless a recording is running, e.g. java -XX:StartFlightRecording ...
+ */
+@Name("imgseg.Phase")
+@Label("Segmentation Phase")
+@Category("Image Segmentation")
+class PhaseEvent extends Event
+{
+    @Label("Image")
+    String image;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Regions Left")
+    long regions;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocated;
+}
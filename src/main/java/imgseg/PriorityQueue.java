@@ -3,11 +3,13 @@
  * CS310
  * Fall 2017
  */
+
+package imgseg;
+
 //
 // This is from your textbook, no need to add or modify anything here
 //
 
-
 import java.util.NoSuchElementException;
 import java.util.Iterator;
 
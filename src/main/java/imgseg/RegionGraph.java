@@ -0,0 +1,304 @@
+/**
+ * @author Ciprian (Andy) Triculescu
+ * CS310
+ * Fall 2017
+ */
+
+package imgseg;
+
+import java.util.Arrays;
+
+/**
+ * Region adjacency graph over the roots of an IntDisjointSets of pixel ids.
+ * Every merged region keeps the roots of its neighboring regions in a primitive open-addressing int hash set.
+ * A single pixel that was never merged has no set: its neighbors are read off the pixel grid on demand,
+ * so building the graph costs nothing and sets only appear as regions grow.
+ * When two regions are unioned the smaller neighbor set is merged into the larger one,
+ * so looking up the neighbors of a region costs its degree, not its area.
+ * A set may still hold the id of a neighbor that has since been unioned off; ids are resolved through the disjoint set
+ * whenever they are read, so the graph stays right whatever order the unions happen in, including many at once,
+ * and a set is compacted whenever its own region merges.
+ */
+public class RegionGraph
+{
+    /**
+     * Marks a free slot of a neighbor set. Ids are never negative.
+     */
+    private static final int EMPTY = -1;
+    /**
+     * Column offsets of the neighbors of a pixel, the 4 edge neighbors first and then the 4 corner neighbors.
+     */
+    private static final int [ ] DW = { -1, 1, 0, 0, -1, -1, 1, 1 };
+    /**
+     * Row offsets of the neighbors of a pixel, in the same order as DW.
+     */
+    private static final int [ ] DH = { 0, 0, -1, 1, -1, 1, -1, 1 };
+
+    /**
+     * The disjoint set the regions come from
+     */
+    private IntDisjointSets ds;
+    /**
+     * Width of the pixel grid
+     */
+    private int width;
+    /**
+     * Height of the pixel grid
+     */
+    private int height;
+    /**
+     * How many grid neighbors a pixel has, 4 or 8
+     */
+    private int connectivity;
+    /**
+     * The neighbor set of every merged root, null for pixels that were never merged and for roots that were unioned off
+     */
+    private int [ ] [ ] tables;
+    /**
+     * The number of neighbors in every set
+     */
+    private int [ ] counts;
+
+    /**
+     * Constructor for RegionGraph. Every pixel of the width by height grid starts as its own region.
+     * @param ds The disjoint set of pixel ids, id = width*h+w.
+     * @param width The width of the grid.
+     * @param height The height of the grid.
+     * @param connectivity 4 if pixels only touch along edges, 8 if corners count too.
+     * @throws IllegalArgumentException if connectivity is not 4 or 8.
+     */
+    public RegionGraph( IntDisjointSets ds, int width, int height, int connectivity )
+    {
+      if(connectivity != 4 && connectivity != 8)
+        throw new IllegalArgumentException();
+      this.ds = ds;
+      this.width = width;
+      this.height = height;
+      this.connectivity = connectivity;
+      tables = new int [width*height] [ ];
+      counts = new int [width*height];
+    }
+
+    /**
+     * Gets the roots of the regions adjacent to the region rooted at root.
+     * This only reads the graph, so it may be called for many roots in parallel as long as nothing is merged at the same time.
+     * @param root The root of the region.
+     * @return A new array with the roots of all the neighboring regions different than this one.
+     */
+    public int [ ] getNeighbors( int root )
+    {
+      int [ ] table = tables[root];
+      if(table == null)
+        return gridNeighbors(root);
+      int [ ] neighbors = new int [counts[root]];
+      int n = 0;
+      boolean stale = false;
+      for(int x: table){
+        if(x == EMPTY)
+          continue;
+        int r = ds.find(x);
+        if(r == root)
+          continue;
+        stale |= (r != x);
+        neighbors[n++] = r;
+      }
+      if(!stale)//distinct roots already, the set holds each id once
+        return (n == neighbors.length) ? neighbors : Arrays.copyOf(neighbors, n);
+      Arrays.sort(neighbors, 0, n);
+      int distinct = 0;
+      for(int i=0; i<n; i++)
+        if(distinct == 0 || neighbors[distinct-1] != neighbors[i])
+          neighbors[distinct++] = neighbors[i];
+      return (distinct == neighbors.length) ? neighbors : Arrays.copyOf(neighbors, distinct);
+    }
+
+    /**
+     * Updates the graph after ds.union made nr the root of the regions formerly rooted at nr and gone.
+     * The smaller of the two neighbor sets is added into the larger one, which then belongs to nr. Neighbors that still
+     * point at gone need no update, gone resolves to nr when they are read.
+     * @param nr The root that survived the union.
+     * @param gone The root that was unioned off.
+     * @return The roots of the regions adjacent to the merged region.
+     */
+    public int [ ] merge( int nr, int gone )
+    {
+      int [ ] a = materialize(nr);
+      int acount = counts[nr];
+      int [ ] b = materialize(gone);
+      int bcount = counts[gone];
+      if(acount < bcount){
+        int [ ] temp = a;
+        a = b;
+        b = temp;
+        acount = bcount;
+      }
+      tables[nr] = a;
+      counts[nr] = acount;
+      tables[gone] = null;
+      counts[gone] = 0;
+      for(int x: b)
+        if(x != EMPTY)
+          add(nr, x);
+      remove(nr, nr);
+      remove(nr, gone);
+      int [ ] neighbors = getNeighbors(nr);
+      if(neighbors.length != counts[nr]){//drop ids that were unioned off or now lie inside the region
+        int size = 16;
+        while(size < 2*neighbors.length+2)
+          size <<= 1;
+        tables[nr] = new int [size];
+        Arrays.fill(tables[nr], EMPTY);
+        counts[nr] = 0;
+        for(int x: neighbors)
+          add(nr, x);
+      }
+      return neighbors;
+    }
+
+    /**
+     * Records that the regions rooted at a and b are adjacent. Used to describe a disjoint set that already has merged regions in it:
+     * every merged region must be connected to all of its neighbors, while single pixels can be left to the grid.
+     * @param a The root of the first region.
+     * @param b The root of the second region.
+     */
+    public void connect( int a, int b )
+    {
+      link(a, b);
+      link(b, a);
+    }
+
+    /**
+     * Adds b to the neighbor set of a, creating an empty set for a if it is a merged region without one. Single pixels are left alone.
+     */
+    private void link( int a, int b )
+    {
+      if(tables[a] == null){
+        if(ds.getSize(a) == 1)
+          return;
+        tables[a] = new int [16];
+        Arrays.fill(tables[a], EMPTY);
+        counts[a] = 0;
+      }
+      add(a, b);
+    }
+
+    /**
+     * Gets the roots around a pixel that was never merged, straight from the pixel grid.
+     * @param root The pixel.
+     * @return A new array with the distinct roots of its grid neighbors.
+     */
+    private int [ ] gridNeighbors( int root )
+    {
+      int [ ] neighbors = new int [connectivity];
+      int n = 0;
+      int h = root/width, w = root-width*h;
+      for(int k=0; k<connectivity; k++){
+        int nw = w+DW[k], nh = h+DH[k];
+        if(nw<0 || nw>=width || nh<0 || nh>=height)
+          continue;
+        int x = ds.find(width*nh+nw);
+        boolean seen = (x == root);
+        for(int i=0; i<n && !seen; i++)
+          seen = (neighbors[i] == x);
+        if(!seen)
+          neighbors[n++] = x;
+      }
+      return Arrays.copyOf(neighbors, n);
+    }
+
+    /**
+     * Gets the neighbor set of root, building it from the pixel grid if root is a pixel that was never merged.
+     * @param root The root of the region.
+     * @return The neighbor set of root.
+     */
+    private int [ ] materialize( int root )
+    {
+      if(tables[root] != null)
+        return tables[root];
+      tables[root] = new int [16];
+      Arrays.fill(tables[root], EMPTY);
+      counts[root] = 0;
+      for(int n: gridNeighbors(root))
+        add(root, n);
+      return tables[root];
+    }
+
+    /**
+     * Adds x to the neighbor set of root, doubling the set once it gets half full.
+     * @return true if x was not in the set yet.
+     */
+    private boolean add( int root, int x )
+    {
+      int [ ] table = tables[root];
+      int mask = table.length-1;
+      int i = slot(x, mask);
+      while(table[i] != EMPTY){
+        if(table[i] == x)
+          return false;
+        i = (i+1)&mask;
+      }
+      table[i] = x;
+      counts[root]++;
+      if(2*counts[root] > table.length)
+        rehash(root, table.length*2);
+      return true;
+    }
+
+    /**
+     * Removes x from the neighbor set of root, shifting later entries of its probe run back so lookups never stop early.
+     * @return true if x was in the set.
+     */
+    private boolean remove( int root, int x )
+    {
+      int [ ] table = tables[root];
+      int mask = table.length-1;
+      int i = slot(x, mask);
+      while(table[i] != x){
+        if(table[i] == EMPTY)
+          return false;
+        i = (i+1)&mask;
+      }
+      int j = i;
+      for(;;){
+        j = (j+1)&mask;
+        if(table[j] == EMPTY)
+          break;
+        int home = slot(table[j], mask);
+        if((j > i) ? (home <= i || home > j) : (home <= i && home > j)){
+          table[i] = table[j];
+          i = j;
+        }
+      }
+      table[i] = EMPTY;
+      counts[root]--;
+      return true;
+    }
+
+    /**
+     * Rebuilds the neighbor set of root with a new size.
+     */
+    private void rehash( int root, int size )
+    {
+      int [ ] old = tables[root];
+      int [ ] table = new int [size];
+      Arrays.fill(table, EMPTY);
+      for(int x: old){
+        if(x == EMPTY)
+          continue;
+        int i = slot(x, size-1);
+        while(table[i] != EMPTY)
+          i = (i+1)&(size-1);
+        table[i] = x;
+      }
+      tables[root] = table;
+    }
+
+    /**
+     * Home slot of an id in a set with the given mask.
+     */
+    private static int slot( int x, int mask )
+    {
+      int h = x*0x9E3779B9;
+      return (h ^ (h>>>16))&mask;
+    }
+}
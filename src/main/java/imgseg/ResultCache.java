@@ -0,0 +1,210 @@
+/**
+ * @author Ciprian (Andy) Triculescu
+ * CS310
+ * Fall 2017
+ */
+
+package imgseg;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * On-disk cache of segmentation results, one file per key in a directory, so repeating a segmentation after a restart is a disk read.
+ * A key is a hash of the decoded pixels and every parameter that changes the result (see Decomposor.setCache).
+ * An entry is the root of every region and the label map (the region of every pixel), deflated, with each label in as few bytes
+ * as the number of regions allows, as in LabelMap. Sizes and colors are not kept: they follow from the pixels once the regions are rebuilt.
+ * An entry that does not hold together (truncated, or with labels or roots out of range) is a miss, and is deleted so it can be stored again. When the files add up to more than the size cap,
+ * the least recently used are deleted; reading an entry counts as using it. Safe to share between threads and processes:
+ * entries are written to a temporary file and renamed into place.
+ */
+public class ResultCache
+{
+    /**
+     * Constructor for a cache in dir, creating it if needed.
+     * @param dir The directory of the entries.
+     * @param maxBytes The most bytes of entries to keep.
+     * @throws IllegalArgumentException if dir cannot be created or maxBytes is less than 1.
+     */
+    public ResultCache(File dir, long maxBytes)
+    {
+      if(maxBytes < 1 || !(dir.isDirectory() || dir.mkdirs()))
+        throw new IllegalArgumentException("! Error: bad cache, directory="+dir+" max bytes="+maxBytes);
+      this.dir = dir;
+      this.maxBytes = maxBytes;
+    }
+
+    /**
+     * A segmentation result read from the cache.
+     */
+    public static class Entry
+    {
+      public Entry(int[] roots, int[] labels){this.roots=roots;this.labels=labels;}
+      /**
+       * The root id of every region, and the index of the region of every pixel. Every root is labeled with its own region.
+       */
+      public final int[] roots, labels;
+    }
+
+    /**
+     * Reads the entry for key.
+     * @param key The key, as made by Decomposor.
+     * @param n The number of pixels the result must have.
+     * @return The entry, or null if there is none, it cannot be read or it is not a valid n pixel result.
+     */
+    public Entry load(String key, int n)
+    {
+      File file = new File(dir, key+SUFFIX);
+      if(!file.isFile())
+        return null;
+      try(DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(new FileInputStream(file)), 1<<16)))
+      {
+        if(in.readInt() != MAGIC || in.readInt() != n)
+          return discard(file);
+        int count = in.readInt();
+        if(count < 1 || count > n)
+          return discard(file);
+        int[] roots = new int[count];
+        for(int r=0; r<count; r++){
+          roots[r] = in.readInt();
+          if(roots[r] < 0 || roots[r] >= n)
+            return discard(file);
+        }
+        int[] labels = new int[n];
+        int width = LabelMap.labelBytes(count);
+        for(int id=0; id<n; id++){
+          labels[id] = (width == 1) ? in.readUnsignedByte() : (width == 2) ? in.readUnsignedShort() : in.readInt();
+          if(labels[id] < 0 || labels[id] >= count)
+            return discard(file);
+        }
+        for(int r=0; r<count; r++)
+          if(labels[roots[r]] != r)
+            return discard(file);
+        file.setLastModified(System.currentTimeMillis());//most recently used
+        return new Entry(roots, labels);
+      }
+      catch(IOException e)
+      {
+        System.err.println("! Error: Failed to read cache entry "+file+", error msg: "+e);
+        return discard(file);
+      }
+    }
+
+    /**
+     * @param key The key, as made by Decomposor.
+     * @return Whether there is an entry for key.
+     */
+    public boolean contains(String key)
+    {
+      return new File(dir, key+SUFFIX).isFile();
+    }
+
+    /**
+     * Writes the result held in ds as the entry for key, then evicts the least recently used entries over the size cap.
+     * Failures are reported and otherwise ignored, since the result is still there to use.
+     * @param key The key, as made by Decomposor.
+     * @param ds The disjoint set of all pixels.
+     * @param n The number of pixels.
+     */
+    public void store(String key, IntDisjointSets ds, int n)
+    {
+      File file = new File(dir, key+SUFFIX);
+      File temp = null;
+      try
+      {
+        int[] index = new int[n];
+        int count = 0;
+        for(int id=0; id<n; id++)
+          if(ds.find(id) == id)
+            index[id] = count++;
+        temp = File.createTempFile(key, ".tmp", dir);
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(new FileOutputStream(temp)), 1<<16)))
+        {
+          out.writeInt(MAGIC);
+          out.writeInt(n);
+          out.writeInt(count);
+          for(int id=0; id<n; id++)
+            if(ds.find(id) == id)
+              out.writeInt(id);
+          int width = LabelMap.labelBytes(count);
+          for(int id=0; id<n; id++){
+            int label = index[ds.find(id)];
+            if(width == 1) out.writeByte(label);
+            else if(width == 2) out.writeShort(label);
+            else out.writeInt(label);
+          }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        evict();
+      }
+      catch(IOException e)
+      {
+        System.err.println("! Error: Failed to write cache entry "+file+", error msg: "+e);
+        if(temp != null)
+          temp.delete();
+      }
+    }
+
+    /**
+     * Deletes an entry that cannot be used, so the next store replaces it; entries are renamed into place whole, so it is not half written.
+     * @param file The entry.
+     * @return null, for load to return.
+     */
+    private static Entry discard(File file)
+    {
+      file.delete();
+      return null;
+    }
+
+    /**
+     * Deletes the least recently used entries until the rest fit under the size cap.
+     */
+    private synchronized void evict()
+    {
+      File[] entries = dir.listFiles();
+      if(entries == null) return;
+      long total = 0;
+      for(File entry: entries)
+        if(entry.getName().endsWith(SUFFIX))
+          total += entry.length();
+      if(total <= maxBytes) return;
+      final long[] used = new long[entries.length];
+      Integer[] order = new Integer[entries.length];
+      for(int i=0; i<entries.length; i++){
+        used[i] = entries[i].lastModified();
+        order[i] = i;
+      }
+      Arrays.sort(order, new Comparator<Integer>(){
+        public int compare(Integer a, Integer b) {
+          return Long.compare(used[a], used[b]);
+        }
+      });
+      for(int i=0; i<order.length && total > maxBytes; i++){
+        File entry = entries[order[i]];
+        if(!entry.getName().endsWith(SUFFIX)) continue;
+        long length = entry.length();
+        if(entry.delete())
+          total -= length;
+      }
+    }
+
+    /**
+     * Start of every entry, "ISG2", followed by the number of pixels, the number of regions, the root of every region and the label of every pixel.
+     */
+    private static final int MAGIC = 0x49534732;
+    private static final String SUFFIX = ".seg";
+    private final File dir;
+    private final long maxBytes;
+}
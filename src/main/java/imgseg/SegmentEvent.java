@@ -0,0 +1,45 @@
+/**
+ * @author Ciprian (Andy) Triculescu
+ * CS310
+ * Fall 2017
+ */
+
+package imgseg;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event with the counters of a whole segment call, committed when it returns.
+ */
+@Name("imgseg.Segment")
+@Label("Segmentation")
+@Category("Image Segmentation")
+class SegmentEvent extends Event
+{
+    @Label("Image")
+    String image;
+
+    @Label("Regions")
+    long regions;
+
+    @Label("Unions")
+    long unions;
+
+    @Label("Heap High Water")
+    long heapHighWater;
+
+    @Label("Queue Pops")
+    long queuePops;
+
+    @Label("Stale Pairs")
+    long stalePairs;
+
+    @Label("Similarity Calls")
+    long similarityCalls;
+
+    @Label("Pixels Scanned")
+    long pixelsScanned;
+}
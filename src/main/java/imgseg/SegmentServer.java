@@ -0,0 +1,436 @@
+/**
+ * @author Ciprian (Andy) Triculescu
+ * CS310
+ * Fall 2017
+ */
+
+package imgseg;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Long running segmentation service on a loopback HTTP port, so a request costs neither JVM startup nor a cold JIT.
+ * <pre>
+ * POST /segment?k=K[&amp;format=png|isl][&amp;timeout=ms]   body: an image file   reply: the recolored PNG or the label map (see LabelMap)
+ * GET  /status                                          reply: JSON counters
+ * </pre>
+ * Images are segmented on a pool of workers threads. Admission control keeps at most workers+queue requests admitted at once:
+ * any more are turned away at once with 429 and Retry-After rather than piling up. A request that is not answered within its
+ * timeout does not simply fail: the merge is stopped after MERGE_SHARE of the time left (see Decomposor.segment(int, long, AtomicBoolean))
+ * and the regions reached so far are sent, with X-Complete: false. The X-Regions and X-Merge-Cost headers say how far every request got.
+ * Only a request that still misses its timeout gets 504, and its worker is told to stop and gives its slot back when it returns, so
+ * timed out requests cannot overload the workers. Bodies over MAX_BODY, and images over the pixel limit (see setMaxPixels), get 413;
+ * the size of an image is read from its header before it is decoded, so a small file that decodes to a huge image costs nothing. The server warms the merge up on a synthetic image
+ * before it starts listening, so the first requests already run compiled code; the warm up results are not put in the result cache.
+ * Override configure to set up every Decomposor the way a single run would be.
+ */
+public class SegmentServer
+{
+    /**
+     * Constructor.
+     * @param port The loopback port to listen on, 0 for any free one.
+     * @param workers The number of images segmented at the same time.
+     * @param queue The number of admitted requests that may wait for a worker.
+     * @param timeoutMillis The longest a request may take, unless it asks for less.
+     * @throws IllegalArgumentException if port is out of range, workers or timeoutMillis is less than 1, or queue is negative.
+     */
+    public SegmentServer(int port, int workers, int queue, long timeoutMillis)
+    {
+      if(port < 0 || port > 65535 || workers < 1 || queue < 0 || timeoutMillis < 1)
+        throw new IllegalArgumentException("! Error: bad server, port="+port+" workers="+workers+" queue="+queue+" timeout="+timeoutMillis);
+      this.port = port;
+      this.workers = workers;
+      this.slots = new Semaphore(workers+queue);
+      this.timeoutMillis = timeoutMillis;
+      this.maxPixels = Math.max(1, Runtime.getRuntime().maxMemory()/(BYTES_PER_PIXEL*workers));
+    }
+
+    /**
+     * Sets the largest image, in pixels, a request may send. Defaults to what the heap holds with every worker segmenting an image that size.
+     * @param maxPixels The largest width*height accepted.
+     * @throws IllegalArgumentException if maxPixels is less than 1.
+     */
+    public void setMaxPixels(long maxPixels)
+    {
+      if(maxPixels < 1)
+        throw new IllegalArgumentException("! Error: max pixels should be positive, current max pixels="+maxPixels);
+      this.maxPixels = maxPixels;
+    }
+
+    /**
+     * Sets up a decomposer before it segments a request. Does nothing by default.
+     * @param seg The decomposer.
+     */
+    protected void configure(Decomposor seg)
+    {
+    }
+
+    /**
+     * Warms up, then starts listening. Requests are served on other threads until stop is called.
+     * @throws IOException if the port cannot be bound.
+     */
+    public void start() throws IOException
+    {
+      warmUp();
+      pool = Executors.newFixedThreadPool(workers);
+      server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+      server.createContext("/segment", new HttpHandler(){
+        public void handle(HttpExchange exchange) throws IOException {
+          try
+          {
+            segment(exchange);
+          }
+          finally
+          {
+            exchange.close();
+          }
+        }
+      });
+      server.createContext("/status", new HttpHandler(){
+        public void handle(HttpExchange exchange) throws IOException {
+          try
+          {
+            reply(exchange, 200, "application/json", status().getBytes(StandardCharsets.UTF_8));
+          }
+          finally
+          {
+            exchange.close();
+          }
+        }
+      });
+      //handler threads only wait on workers, so there are enough of them for every admitted request plus some to turn the rest away
+      server.setExecutor(Executors.newFixedThreadPool(slots.availablePermits()+workers));
+      server.start();
+    }
+
+    /**
+     * Stops listening, waiting up to a second for requests being answered, and stops the workers.
+     */
+    public void stop()
+    {
+      server.stop(1);
+      pool.shutdownNow();
+      ((ExecutorService)server.getExecutor()).shutdownNow();
+    }
+
+    /**
+     * @return The port the server is listening on.
+     */
+    public int getPort()
+    {
+      return server.getAddress().getPort();
+    }
+
+    /**
+     * @return The counters of the server as a JSON object.
+     */
+    public String status()
+    {
+      return "{\"served\": "+served.get()+", \"partial\": "+partial.get()+", \"rejected\": "+rejected.get()+", \"timedOut\": "+timedOut.get()+", \"failed\": "+failed.get()
+        +", \"inFlight\": "+inFlight.get()+", \"workers\": "+workers+", \"slots\": "+slots.availablePermits()+"}\n";
+    }
+
+    /**
+     * Answers one POST /segment: checks the request, admits it, reads and decodes the image, and waits for a worker to segment it.
+     */
+    private void segment(HttpExchange exchange) throws IOException
+    {
+      if(!"POST".equals(exchange.getRequestMethod())){
+        error(exchange, 405, "use POST with the image as the body");
+        return;
+      }
+      final int K;
+      final boolean labels;
+      long timeout = timeoutMillis;
+      try
+      {
+        String k = parameter(exchange, "k"), format = parameter(exchange, "format"), wait = parameter(exchange, "timeout");
+        if(k == null)
+          throw new IllegalArgumentException("k is missing");
+        K = Integer.parseInt(k);
+        if(K < 2)
+          throw new IllegalArgumentException("k should be greater than 1");
+        if(format != null && !format.equals("png") && !format.equals("isl"))
+          throw new IllegalArgumentException("format should be png or isl");
+        labels = "isl".equals(format);
+        if(wait != null)
+          timeout = Math.max(1, Math.min(timeout, Long.parseLong(wait)));
+      }
+      catch(IllegalArgumentException e)//NumberFormatException is one too
+      {
+        error(exchange, 400, e.getMessage());
+        return;
+      }
+      final long deadline = System.nanoTime()+TimeUnit.MILLISECONDS.toNanos(timeout);
+
+      if(!slots.tryAcquire()){
+        rejected.incrementAndGet();
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        error(exchange, 429, "busy, try again later");
+        return;
+      }
+      boolean handedOver = false;//once a worker has the request, the worker gives the slot back
+      try
+      {
+        byte[] body = readBody(exchange.getRequestBody());
+        if(body == null){
+          error(exchange, 413, "image over "+(MAX_BODY>>20)+"MB");
+          return;
+        }
+        final BufferedImage image;
+        try(ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(body)))
+        {
+          Iterator<ImageReader> readers = (in == null) ? null : ImageIO.getImageReaders(in);
+          if(readers == null || !readers.hasNext()){
+            error(exchange, 415, "not an image ImageIO can read");
+            return;
+          }
+          ImageReader reader = readers.next();
+          try
+          {
+            reader.setInput(in);
+            long size = (long)reader.getWidth(0)*reader.getHeight(0);//from the header, nothing decoded yet
+            if(size > maxPixels){
+              error(exchange, 413, "image of "+size+" pixels, over "+maxPixels);
+              return;
+            }
+            image = reader.read(0);
+          }
+          catch(IOException | RuntimeException e)//a broken file may fail either way
+          {
+            error(exchange, 415, "not an image ImageIO can read: "+e.getMessage());
+            return;
+          }
+          finally
+          {
+            reader.dispose();
+          }
+        }
+        final AtomicBoolean claimed = new AtomicBoolean();//by the worker when it starts, or by this thread when it gives up first
+        final AtomicBoolean cancel = new AtomicBoolean();
+        Future<Result> result = pool.submit(new Callable<Result>(){
+          public Result call() throws IOException {
+            if(!claimed.compareAndSet(false, true))
+              return null;//given up on before a worker got to it, the slot is back already
+            inFlight.incrementAndGet();
+            try
+            {
+              Decomposor seg = new Decomposor(image, "request");
+              seg.setVerbose(false);
+              configure(seg);
+              long left = TimeUnit.NANOSECONDS.toMillis(deadline-System.nanoTime());
+              boolean complete = seg.segment(K, Math.max(0, (long)(MERGE_SHARE*left)), cancel);
+              ByteArrayOutputStream out = new ByteArrayOutputStream();
+              seg.writeResults(out, labels);
+              return new Result(out.toByteArray(), complete, seg.getNumRegions(), seg.getMergeCost());
+            }
+            finally
+            {
+              inFlight.decrementAndGet();
+              slots.release();
+            }
+          }
+        });
+        handedOver = true;
+        try
+        {
+          Result reply = result.get(Math.max(0, deadline-System.nanoTime()), TimeUnit.NANOSECONDS);
+          served.incrementAndGet();
+          if(!reply.complete)
+            partial.incrementAndGet();
+          exchange.getResponseHeaders().set("X-Complete", String.valueOf(reply.complete));
+          exchange.getResponseHeaders().set("X-Regions", String.valueOf(reply.regions));
+          exchange.getResponseHeaders().set("X-Merge-Cost", String.valueOf(reply.cost));
+          reply(exchange, 200, labels ? "application/octet-stream" : "image/png", reply.body);
+        }
+        catch(TimeoutException e)
+        {
+          giveUp(result, claimed, cancel);
+          timedOut.incrementAndGet();
+          error(exchange, 504, "not done in "+timeout+"ms");
+        }
+        catch(ExecutionException e)
+        {
+          failed.incrementAndGet();
+          if(e.getCause() instanceof IllegalArgumentException)
+            error(exchange, 400, e.getCause().getMessage());
+          else
+            error(exchange, 500, String.valueOf(e.getCause()));
+        }
+        catch(InterruptedException e)
+        {
+          giveUp(result, claimed, cancel);
+          Thread.currentThread().interrupt();
+          error(exchange, 503, "shutting down");
+        }
+      }
+      catch(RejectedExecutionException e)
+      {
+        error(exchange, 503, "shutting down");
+      }
+      finally
+      {
+        if(!handedOver)
+          slots.release();
+      }
+    }
+
+    /**
+     * Abandons a request handed to the workers. If no worker has started it, it never will and its slot is given back here;
+     * otherwise its merge is cancelled and the worker gives the slot back when it returns.
+     */
+    private void giveUp(Future<Result> result, AtomicBoolean claimed, AtomicBoolean cancel)
+    {
+      cancel.set(true);
+      if(claimed.compareAndSet(false, true))
+        slots.release();
+      result.cancel(true);
+    }
+
+    /**
+     * What a worker sends back: the reply body and how far the merge got.
+     */
+    private static class Result
+    {
+      public Result(byte[] body, boolean complete, int regions, int cost){this.body=body;this.complete=complete;this.regions=regions;this.cost=cost;}
+      final byte[] body;
+      final boolean complete;
+      final int regions, cost;
+    }
+
+    /**
+     * Segments a noisy synthetic image a few times, so the hot loops are compiled before the first request. The decomposers are
+     * configured like a request's but without the cache, so the warm up neither fills it nor evicts real results.
+     */
+    private void warmUp()
+    {
+      BufferedImage image = new BufferedImage(WARMUP_SIZE, WARMUP_SIZE, BufferedImage.TYPE_INT_RGB);
+      Random random = new Random(WARMUP_SIZE);
+      for(int y=0; y<WARMUP_SIZE; y++)
+        for(int x=0; x<WARMUP_SIZE; x++)
+          image.setRGB(x, y, (x/16*40+y/16*24+random.nextInt(32))*0x010101&0xffffff);
+      for(int round=0; round<WARMUP_ROUNDS; round++){
+        Decomposor seg = new Decomposor(image, "warmup");
+        seg.setVerbose(false);
+        configure(seg);
+        seg.setCache(null);
+        seg.segment(WARMUP_K);
+        try
+        {
+          seg.writeResults(new ByteArrayOutputStream(), (round&1) == 1);
+        }
+        catch(IOException e)
+        {
+          throw new IllegalStateException("! Error: warm up failed", e);//a byte array stream does not fail
+        }
+      }
+    }
+
+    /**
+     * Reads a request body, up to MAX_BODY bytes.
+     * @return The body, or null if it is longer than MAX_BODY.
+     */
+    private static byte[] readBody(InputStream in) throws IOException
+    {
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      byte[] buffer = new byte[1<<16];
+      for(int read; (read = in.read(buffer)) > 0; ){
+        if(body.size()+read > MAX_BODY)
+          return null;
+        body.write(buffer, 0, read);
+      }
+      return body.toByteArray();
+    }
+
+    /**
+     * @return The value of a query parameter, or null if it is not there.
+     */
+    private static String parameter(HttpExchange exchange, String name)
+    {
+      String query = exchange.getRequestURI().getRawQuery();
+      if(query == null) return null;
+      for(String pair: query.split("&")){
+        int eq = pair.indexOf('=');
+        if(eq > 0 && pair.substring(0, eq).equals(name))
+          return pair.substring(eq+1);
+      }
+      return null;
+    }
+
+    private static void error(HttpExchange exchange, int code, String message) throws IOException
+    {
+      reply(exchange, code, "text/plain", ("! Error: "+message+"\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void reply(HttpExchange exchange, int code, String type, byte[] body) throws IOException
+    {
+      exchange.getResponseHeaders().set("Content-Type", type);
+      exchange.sendResponseHeaders(code, body.length);
+      try(OutputStream out = exchange.getResponseBody())
+      {
+        out.write(body);
+      }
+    }
+
+    /**
+     * Largest accepted request body.
+     */
+    private static final int MAX_BODY = 64<<20;
+    /**
+     * Rough heap bytes one pixel costs while it is segmented, for the default pixel limit.
+     */
+    private static final long BYTES_PER_PIXEL = 400;
+    /**
+     * The share of the time left to a request that its merge may take, leaving the rest to write the reply.
+     */
+    private static final double MERGE_SHARE = 0.8;
+    /**
+     * Pending connections the operating system keeps before the server accepts them.
+     */
+    private static final int BACKLOG = 64;
+    /**
+     * The warm up image is WARMUP_SIZE pixels across and segmented WARMUP_ROUNDS times down to WARMUP_K regions.
+     */
+    private static final int WARMUP_SIZE = 192;
+    private static final int WARMUP_ROUNDS = 4;
+    private static final int WARMUP_K = 16;
+    private final int port, workers;
+    private final long timeoutMillis;
+    private long maxPixels;
+    /**
+     * One permit per request that may be admitted at once.
+     */
+    private final Semaphore slots;
+    private final AtomicLong served = new AtomicLong(), partial = new AtomicLong(), rejected = new AtomicLong(), timedOut = new AtomicLong(), failed = new AtomicLong(), inFlight = new AtomicLong();
+    private HttpServer server;
+    private ExecutorService pool;
+}
@@ -0,0 +1,265 @@
+/**
+ * @author Ciprian (Andy) Triculescu
+ * CS310
+ * Fall 2017
+ */
+
+package imgseg;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and phase timings of one segmentation run. The hot loops count in locals and add them here once per call or per progress report,
+ * so keeping metrics costs nothing per merge. Readable through JMX (see register), JFR (PhaseEvent and SegmentEvent) and toJson.
+ */
+public class SegmentationMetrics implements SegmentationMetricsMBean
+{
+    /**
+     * The phases of a run, in the order they happen. PARTITION is the starting partition of tiles or a pyramid, when either is on.
+     */
+    public enum Phase { LOAD, PARTITION, EDGES, MERGE, OUTPUT }
+
+    /**
+     * Constructor for the metrics of one image.
+     * @param image The name of the image.
+     */
+    public SegmentationMetrics(String image)
+    {
+      this.image = image;
+    }
+
+    /**
+     * Starts timing a phase. Phases run one at a time on the thread that calls segment.
+     * @param phase The phase that starts.
+     */
+    public void begin(Phase phase)
+    {
+      current = phase;
+      event = new PhaseEvent();
+      event.begin();
+      phaseStart = System.nanoTime();
+      phaseBytes = allocatedBytes();
+    }
+
+    /**
+     * Stops timing the phase started last and commits its JFR event.
+     */
+    public void end()
+    {
+      long bytes = allocatedBytes();
+      nanos[current.ordinal()] += System.nanoTime()-phaseStart;
+      if(bytes < phaseBytes || phaseBytes < 0 || allocated[current.ordinal()] < 0)
+        allocated[current.ordinal()] = -1;//untracked, or threads that allocated ended during the phase
+      else
+        allocated[current.ordinal()] += bytes-phaseBytes;
+      event.end();
+      if(event.shouldCommit()){
+        event.image = image;
+        event.phase = current.name();
+        event.regions = regions;
+        event.allocated = allocated[current.ordinal()];
+        event.commit();
+      }
+      event = null;
+    }
+
+    /**
+     * Records the state of the merge, called from the progress report and at the end of every phase.
+     * @param regions The number of regions left.
+     * @param pq The similarity queue, or null if there is none.
+     */
+    public void checkpoint(long regions, SimilarityQueue pq)
+    {
+      this.regions = regions;
+      if(pq != null){
+        this.heapSize = pq.size();
+        this.heapHighWater = Math.max(this.heapHighWater, pq.highWaterMark());
+      }
+    }
+
+    /**
+     * Adds to the counters of the merge loop. Safe to call from several threads at once.
+     * @param unions The number of unions.
+     * @param pops The number of pairs taken off the top of the queue.
+     * @param stale The number of pairs dropped because one side was merged away.
+     * @param similarities The number of getSimilarity calls.
+     */
+    public void count(long unions, long pops, long stale, long similarities)
+    {
+      if(unions != 0) this.unions.add(unions);
+      if(pops != 0) this.queuePops.add(pops);
+      if(stale != 0) this.stalePairs.add(stale);
+      if(similarities != 0) this.similarityCalls.add(similarities);
+    }
+
+    /**
+     * Adds to the number of pixels visited. Safe to call from several threads at once.
+     * @param pixels The number of pixels.
+     */
+    public void scanned(long pixels)
+    {
+      pixelsScanned.add(pixels);
+    }
+
+    /**
+     * Commits a JFR event with the counters of the run so far.
+     */
+    public void commitRun()
+    {
+      SegmentEvent run = new SegmentEvent();
+      if(!run.shouldCommit()) return;
+      run.image = image;
+      run.regions = regions;
+      run.unions = getUnions();
+      run.heapHighWater = heapHighWater;
+      run.queuePops = getQueuePops();
+      run.stalePairs = getStalePairs();
+      run.similarityCalls = getSimilarityCalls();
+      run.pixelsScanned = getPixelsScanned();
+      run.commit();
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server as imgseg:type=Segmentation,name=image, replacing the metrics of an earlier run of the same image.
+     * @throws IllegalStateException if JMX refuses the bean.
+     */
+    public void register()
+    {
+      try{
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("imgseg:type=Segmentation,name="+ObjectName.quote(image));
+        if(server.isRegistered(name))
+          server.unregisterMBean(name);
+        server.registerMBean(this, name);
+      }
+      catch(JMException e){
+        throw new IllegalStateException("! Error: Failed to register metrics for "+image, e);
+      }
+    }
+
+    /**
+     * Writes toJson to a file.
+     * @param filename The file to write.
+     */
+    public void writeJson(String filename)
+    {
+      try(Writer out = new FileWriter(filename))
+      {
+        out.write(toJson());
+        out.write('\n');
+        System.err.println("- Saved metrics to "+filename);
+      }
+      catch(IOException e)
+      {
+        System.err.println("! Error: Failed to save metrics to "+filename+", error msg: "+e);
+      }
+    }
+
+    public String getImage() { return image; }
+    public long getRegions() { return regions; }
+    public long getUnions() { return unions.sum(); }
+    public long getHeapSize() { return heapSize; }
+    public long getHeapHighWater() { return heapHighWater; }
+    public long getQueuePops() { return queuePops.sum(); }
+    public long getStalePairs() { return stalePairs.sum(); }
+    public long getSimilarityCalls() { return similarityCalls.sum(); }
+    public long getPixelsScanned() { return pixelsScanned.sum(); }
+
+    public String[] getPhaseNames()
+    {
+      Phase[] phases = Phase.values();
+      String[] names = new String[phases.length];
+      for(int i=0; i<phases.length; i++)
+        names[i] = phases[i].name().toLowerCase();
+      return names;
+    }
+
+    public long[] getPhaseMillis()
+    {
+      long[] millis = new long[nanos.length];
+      for(int i=0; i<nanos.length; i++)
+        millis[i] = nanos[i]/1000000;
+      return millis;
+    }
+
+    public long[] getPhaseBytes()
+    {
+      return allocated.clone();
+    }
+
+    public String toJson()
+    {
+      StringBuilder json = new StringBuilder();
+      json.append("{\"image\":\"").append(image.replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+      json.append(",\"regions\":").append(regions);
+      json.append(",\"unions\":").append(getUnions());
+      json.append(",\"heapSize\":").append(heapSize);
+      json.append(",\"heapHighWater\":").append(heapHighWater);
+      json.append(",\"queuePops\":").append(getQueuePops());
+      json.append(",\"stalePairs\":").append(getStalePairs());
+      json.append(",\"similarityCalls\":").append(getSimilarityCalls());
+      json.append(",\"pixelsScanned\":").append(getPixelsScanned());
+      json.append(",\"phases\":{");
+      String[] names = getPhaseNames();
+      for(int i=0; i<names.length; i++){
+        if(i > 0) json.append(',');
+        json.append('"').append(names[i]).append("\":{\"nanos\":").append(nanos[i]).append(",\"bytes\":").append(allocated[i]).append('}');
+      }
+      return json.append("}}").toString();
+    }
+
+    /**
+     * The bytes allocated on the heap by all live threads, or -1 if the JVM does not track it.
+     * Threads that ended during a phase drop out of the sum, so phases that start and stop a pool undercount.
+     */
+    private static long allocatedBytes()
+    {
+      java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+      if(!(threads instanceof com.sun.management.ThreadMXBean)) return -1;
+      com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean)threads;
+      if(!hotspot.isThreadAllocatedMemorySupported() || !hotspot.isThreadAllocatedMemoryEnabled()) return -1;
+      long total = 0;
+      for(long bytes: hotspot.getThreadAllocatedBytes(hotspot.getAllThreadIds()))
+        if(bytes > 0) total += bytes;
+      return total;
+    }
+
+    /**
+     * The name of the image.
+     */
+    private final String image;
+    /**
+     * Wall-clock nanoseconds and allocated bytes per phase, indexed by Phase.ordinal().
+     */
+    private final long[] nanos = new long[Phase.values().length];
+    private final long[] allocated = new long[Phase.values().length];
+    /**
+     * The phase being timed, when it started and the allocation counter at its start.
+     */
+    private Phase current;
+    private long phaseStart;
+    private long phaseBytes;
+    private PhaseEvent event;
+    /**
+     * Last recorded state of the merge.
+     */
+    private volatile long regions;
+    private volatile long heapSize;
+    private volatile long heapHighWater;
+    /**
+     * Counters added to from the merge loops, possibly from several tiles at once.
+     */
+    private final LongAdder unions = new LongAdder();
+    private final LongAdder queuePops = new LongAdder();
+    private final LongAdder stalePairs = new LongAdder();
+    private final LongAdder similarityCalls = new LongAdder();
+    private final LongAdder pixelsScanned = new LongAdder();
+}
@@ -0,0 +1,66 @@
+/**
+ * @author Ciprian (Andy) Triculescu
+ * CS310
+ * Fall 2017
+ */
+
+package imgseg;
+
+/**
+ * JMX view of the SegmentationMetrics of a run. The counters are updated while segment runs, so they can be watched live from jconsole.
+ */
+public interface SegmentationMetricsMBean
+{
+    /**
+     * @return The name of the image being segmented.
+     */
+    String getImage();
+    /**
+     * @return The number of regions left.
+     */
+    long getRegions();
+    /**
+     * @return The number of unions done so far.
+     */
+    long getUnions();
+    /**
+     * @return The number of pairs in the similarity queue.
+     */
+    long getHeapSize();
+    /**
+     * @return The largest number of pairs the similarity queue held at once.
+     */
+    long getHeapHighWater();
+    /**
+     * @return The number of most similar pairs taken off the queue.
+     */
+    long getQueuePops();
+    /**
+     * @return The number of pairs dropped from the queue because one side was merged away.
+     */
+    long getStalePairs();
+    /**
+     * @return The number of getSimilarity calls.
+     */
+    long getSimilarityCalls();
+    /**
+     * @return The number of pixels visited while building edges, seeding from a partition and writing results.
+     */
+    long getPixelsScanned();
+    /**
+     * @return The names of the phases, in the same order as getPhaseMillis and getPhaseBytes.
+     */
+    String[] getPhaseNames();
+    /**
+     * @return The wall-clock time spent in every phase, in milliseconds.
+     */
+    long[] getPhaseMillis();
+    /**
+     * @return The bytes allocated by all live threads during every phase, or -1 where the JVM cannot tell.
+     */
+    long[] getPhaseBytes();
+    /**
+     * @return All of the above as one JSON object.
+     */
+    String toJson();
+}
@@ -4,6 +4,8 @@
  * Fall 2017
  */
 
+package imgseg;
+
 //You cannot import additonal items
 import java.util.AbstractCollection;
 import java.util.Iterator;
@@ -24,18 +26,13 @@ public class Set<T> extends AbstractCollection<T>
    */
   private Object tset[] = new Object[100];
   
+  /**
+   * Doubles the capacity of the data array, copying the current elements over once.
+   */
   private void resize(){
-    
-    Object copyset[] = new Object[tset.length];
-    for(int i=0; i<tset.length; i++){
-      copyset[i] = tset[i];
-    }
-
-    Object emptyset[] = new Object[copyset.length*2];
-    tset = emptyset;
-    for(int j=0; j<copyset.length; j++){
-      tset[j] = copyset[j];
-    }
+    Object biggerset[] = new Object[tset.length*2];
+    System.arraycopy(tset, 0, biggerset, 0, size);
+    tset = biggerset;
   }
   /**
    * Adds one t item to the array, resizes if necessary if at 80% capacity. 
@@ -54,15 +51,22 @@ public class Set<T> extends AbstractCollection<T>
   }
   
   /** 
-   * Adds all the elements of set other to this set. Uses an iterator to iterate through other, and uses this' add method at each element.
+   * Adds all the elements of set other to this set. Grows the data array at most once and copies other's elements over in one block.
    * @param other The set to copy to the end of this set.
    * @return True in all cases. 
    */
   public boolean addAll(Set<T> other)
   {
-    Iterator<T> iter = other.iterator();
-    while(iter.hasNext())
-      this.add(iter.next());
+    if(size + other.size > (int)(0.8*(tset.length))){
+      int capacity = tset.length;
+      while(size + other.size > (int)(0.8*capacity))
+        capacity *= 2;
+      Object biggerset[] = new Object[capacity];
+      System.arraycopy(tset, 0, biggerset, 0, size);
+      tset = biggerset;
+    }
+    System.arraycopy(other.tset, 0, tset, size, other.size);
+    size += other.size;
     return true;
   }
   
@@ -0,0 +1,465 @@
+/**
+ * @author Ciprian (Andy) Triculescu
+ * CS310
+ * Fall 2017
+ */
+
+package imgseg;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Addressable PriorityQueue of similarities specialized to primitives, implemented as a 4-ary heap.
+ * Each entry is a distance and an unordered pair of ids {p,q}, ordered by distance, then the smaller id, then the larger id.
+ * There is at most one entry per pair: adding a pair that is already queued changes its distance in place,
+ * and a pair can be removed from anywhere in the heap. Entries live in parallel primitive arrays indexed by a handle,
+ * the heap itself only moves handles around, and a hash table from pair to handle makes every pair addressable.
+ */
+public class SimilarityQueue
+{
+    /**
+     * Construct an empty SimilarityQueue.
+     */
+    public SimilarityQueue()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Construct an empty SimilarityQueue with room for capacity entries before it has to grow.
+     * @param capacity the initial capacity.
+     */
+    public SimilarityQueue( int capacity )
+    {
+        capacity = Math.max( capacity, 1 );
+        currentSize = 0;
+        heap = new int[ capacity ];
+        distances = new int[ capacity ];
+        pairs = new long[ capacity ];
+        positions = new int[ capacity ];
+        nextHandle = 0;
+        freeHandles = new int[ 16 ];
+        freeCount = 0;
+        keys = new long[ tableSizeFor( capacity ) ];
+        Arrays.fill( keys, EMPTY );
+        values = new int[ keys.length ];
+    }
+
+    /**
+     * Adds the pair {p,q} with the given distance, or changes the distance of the pair if it is already queued.
+     * @param distance the distance between p and q.
+     * @param p the first id.
+     * @param q the second id.
+     * @throws IllegalArgumentException if p equals q or either is negative.
+     */
+    public void add( int distance, int p, int q )
+    {
+        int handle = lookup( pack( p, q ) );
+        if( handle < 0 )
+        {
+            handle = insert( distance, p, q );
+            percolateUp( positions[ handle ] );
+        }
+        else
+        {
+            int old = distances[ handle ];
+            distances[ handle ] = distance;
+            if( distance < old )
+                percolateUp( positions[ handle ] );
+            else if( distance > old )
+                percolateDown( positions[ handle ] );
+        }
+    }
+
+    /**
+     * Adds the pair {p,q} at the end of the heap without restoring heap order. A pair that is already queued only has its distance replaced.
+     * After a batch of appends call buildHeap before anything else.
+     * @param distance the distance between p and q.
+     * @param p the first id.
+     * @param q the second id.
+     * @throws IllegalArgumentException if p equals q or either is negative.
+     */
+    public void append( int distance, int p, int q )
+    {
+        int handle = lookup( pack( p, q ) );
+        if( handle < 0 )
+            insert( distance, p, q );
+        else
+            distances[ handle ] = distance;
+    }
+
+    /**
+     * Removes the pair {p,q} from wherever it is in the heap.
+     * @param p the first id.
+     * @param q the second id.
+     * @return true if the pair was queued.
+     */
+    public boolean remove( int p, int q )
+    {
+        if( p == q || p < 0 || q < 0 )
+            return false;
+        int handle = lookup( pack( p, q ) );
+        if( handle < 0 )
+            return false;
+        removeAt( positions[ handle ] );
+        return true;
+    }
+
+    /**
+     * Returns true if the pair {p,q} is queued.
+     * @param p the first id.
+     * @param q the second id.
+     * @return true if the pair is queued.
+     */
+    public boolean contains( int p, int q )
+    {
+        return p != q && p >= 0 && q >= 0 && lookup( pack( p, q ) ) >= 0;
+    }
+
+    /**
+     * Establish heap order property from an arbitrary
+     * arrangement of items. Runs in linear time.
+     */
+    public void buildHeap( )
+    {
+        for( int i = ( currentSize - 2 ) / D; i >= 0; i-- )
+            percolateDown( i );
+    }
+
+    /**
+     * Returns the number of entries in this SimilarityQueue.
+     * @return the number of entries in this SimilarityQueue.
+     */
+    public int size( )
+    {
+        return currentSize;
+    }
+
+    /**
+     * Returns the largest number of entries this SimilarityQueue has held at once.
+     * @return the high-water mark of size().
+     */
+    public int highWaterMark( )
+    {
+        return highWater;
+    }
+
+    /**
+     * Make this SimilarityQueue empty.
+     */
+    public void clear( )
+    {
+        currentSize = 0;
+        nextHandle = 0;
+        freeCount = 0;
+        Arrays.fill( keys, EMPTY );
+    }
+
+    public boolean isEmpty( )
+    {
+        return currentSize == 0;
+    }
+
+    /**
+     * Returns the distance of the smallest entry.
+     * @return the smallest distance.
+     * @throws NoSuchElementException if empty.
+     */
+    public int rootDistance( )
+    {
+        if( isEmpty( ) )
+            throw new NoSuchElementException( );
+        return distances[ heap[ 0 ] ];
+    }
+
+    /**
+     * Returns the smaller id of the smallest entry.
+     * @return p of the smallest entry.
+     * @throws NoSuchElementException if empty.
+     */
+    public int rootP( )
+    {
+        if( isEmpty( ) )
+            throw new NoSuchElementException( );
+        return (int) ( pairs[ heap[ 0 ] ] >>> 32 );
+    }
+
+    /**
+     * Returns the larger id of the smallest entry.
+     * @return q of the smallest entry.
+     * @throws NoSuchElementException if empty.
+     */
+    public int rootQ( )
+    {
+        if( isEmpty( ) )
+            throw new NoSuchElementException( );
+        return (int) pairs[ heap[ 0 ] ];
+    }
+
+    /**
+     * Removes the smallest entry in the queue.
+     * @throws NoSuchElementException if empty.
+     */
+    public void remove( )
+    {
+        if( isEmpty( ) )
+            throw new NoSuchElementException( );
+        removeAt( 0 );
+    }
+
+    private static final int DEFAULT_CAPACITY = 100;
+
+    /**
+     * Number of children of every node. A wider node makes the heap shallower.
+     */
+    private static final int D = 4;
+
+    /**
+     * Marks a free slot of the hash table. Packed pairs are never negative.
+     */
+    private static final long EMPTY = -1L;
+
+    private int currentSize;    // Number of entries in heap
+    private int highWater;      // Largest currentSize so far
+    private int [ ] heap;       // The handles of the entries, in heap order
+    private int [ ] distances;  // The distance of every handle
+    private long [ ] pairs;     // The {p,q} ids of every handle, smaller id in the high half
+    private int [ ] positions;  // Where every handle sits in heap
+    private int nextHandle;     // Handles below this have been used at least once
+    private int [ ] freeHandles; // Handles released by removals, reused first
+    private int freeCount;
+    private long [ ] keys;      // Hash table from packed pair to handle, open addressing with linear probing
+    private int [ ] values;
+
+    /**
+     * Packs an unordered pair of ids into one long that orders by the smaller id, then the larger one.
+     */
+    private static long pack( int p, int q )
+    {
+        if( p == q || p < 0 || q < 0 )
+            throw new IllegalArgumentException( );
+        if( p > q )
+        {
+            int temp = p;
+            p = q;
+            q = temp;
+        }
+        return ( (long) p << 32 ) | q;
+    }
+
+    /**
+     * Creates a new entry at the end of the heap and registers it in the hash table.
+     * @return the handle of the entry.
+     */
+    private int insert( int distance, int p, int q )
+    {
+        int handle;
+        if( freeCount > 0 )
+            handle = freeHandles[ --freeCount ];
+        else
+        {
+            if( nextHandle == distances.length )
+                doubleArrays( );
+            handle = nextHandle++;
+        }
+        distances[ handle ] = distance;
+        pairs[ handle ] = pack( p, q );
+        heap[ currentSize ] = handle;
+        positions[ handle ] = currentSize;
+        currentSize++;
+        if( currentSize > highWater )
+            highWater = currentSize;
+        put( pairs[ handle ], handle );
+        return handle;
+    }
+
+    /**
+     * Removes the entry at heap index hole, releasing its handle.
+     */
+    private void removeAt( int hole )
+    {
+        int handle = heap[ hole ];
+        delete( pairs[ handle ] );
+        if( freeCount == freeHandles.length )
+            freeHandles = Arrays.copyOf( freeHandles, freeHandles.length * 2 );
+        freeHandles[ freeCount++ ] = handle;
+        currentSize--;
+        if( hole == currentSize )
+            return;
+        int last = heap[ currentSize ];
+        heap[ hole ] = last;
+        positions[ last ] = hole;
+        if( hole > 0 && less( last, heap[ ( hole - 1 ) / D ] ) )
+            percolateUp( hole );
+        else
+            percolateDown( hole );
+    }
+
+    /**
+     * Returns true if handle a orders strictly before handle b.
+     */
+    private boolean less( int a, int b )
+    {
+        if( distances[ a ] != distances[ b ] )
+            return distances[ a ] < distances[ b ];
+        return pairs[ a ] < pairs[ b ];
+    }
+
+    /**
+     * Internal method to percolate up in the heap.
+     * @param hole the index at which the percolate begins.
+     */
+    private void percolateUp( int hole )
+    {
+        int handle = heap[ hole ];
+        while( hole > 0 )
+        {
+            int parent = ( hole - 1 ) / D;
+            if( !less( handle, heap[ parent ] ) )
+                break;
+            heap[ hole ] = heap[ parent ];
+            positions[ heap[ hole ] ] = hole;
+            hole = parent;
+        }
+        heap[ hole ] = handle;
+        positions[ handle ] = hole;
+    }
+
+    /**
+     * Internal method to percolate down in the heap.
+     * @param hole the index at which the percolate begins.
+     */
+    private void percolateDown( int hole )
+    {
+        int handle = heap[ hole ];
+        for( ; ; )
+        {
+            int first = hole * D + 1;
+            if( first >= currentSize )
+                break;
+            int child = first;
+            int last = Math.min( first + D, currentSize );
+            for( int c = first + 1; c < last; c++ )
+                if( less( heap[ c ], heap[ child ] ) )
+                    child = c;
+            if( !less( heap[ child ], handle ) )
+                break;
+            heap[ hole ] = heap[ child ];
+            positions[ heap[ hole ] ] = hole;
+            hole = child;
+        }
+        heap[ hole ] = handle;
+        positions[ handle ] = hole;
+    }
+
+    /**
+     * Internal method to extend the per-handle arrays and the heap.
+     */
+    private void doubleArrays( )
+    {
+        int capacity = distances.length * 2;
+        heap = Arrays.copyOf( heap, capacity );
+        distances = Arrays.copyOf( distances, capacity );
+        pairs = Arrays.copyOf( pairs, capacity );
+        positions = Arrays.copyOf( positions, capacity );
+    }
+
+    /**
+     * Smallest power of two table size that keeps capacity entries at most half full.
+     */
+    private static int tableSizeFor( int capacity )
+    {
+        int size = 16;
+        while( size < 2L * capacity )
+            size <<= 1;
+        return size;
+    }
+
+    /**
+     * Home slot of a key in the hash table.
+     */
+    private int slot( long key )
+    {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) ( h >>> 32 ) & ( keys.length - 1 );
+    }
+
+    /**
+     * Looks up the handle of a packed pair.
+     * @return the handle, or -1 if the pair is not queued.
+     */
+    private int lookup( long key )
+    {
+        for( int i = slot( key ); ; i = ( i + 1 ) & ( keys.length - 1 ) )
+        {
+            if( keys[ i ] == key )
+                return values[ i ];
+            if( keys[ i ] == EMPTY )
+                return -1;
+        }
+    }
+
+    /**
+     * Adds a packed pair that is not in the table yet, growing the table past half full.
+     */
+    private void put( long key, int handle )
+    {
+        if( 2 * ( currentSize + 1 ) > keys.length )
+            rehash( keys.length * 2 );
+        int i = slot( key );
+        while( keys[ i ] != EMPTY )
+            i = ( i + 1 ) & ( keys.length - 1 );
+        keys[ i ] = key;
+        values[ i ] = handle;
+    }
+
+    /**
+     * Deletes a packed pair, shifting later entries of its probe run back so lookups never stop early.
+     */
+    private void delete( long key )
+    {
+        int mask = keys.length - 1;
+        int i = slot( key );
+        while( keys[ i ] != key )
+            i = ( i + 1 ) & mask;
+        int j = i;
+        for( ; ; )
+        {
+            j = ( j + 1 ) & mask;
+            if( keys[ j ] == EMPTY )
+                break;
+            int home = slot( keys[ j ] );
+            //move keys[j] into the hole at i unless its home lies cyclically in (i, j]
+            if( ( j > i ) ? ( home <= i || home > j ) : ( home <= i && home > j ) )
+            {
+                keys[ i ] = keys[ j ];
+                values[ i ] = values[ j ];
+                i = j;
+            }
+        }
+        keys[ i ] = EMPTY;
+    }
+
+    /**
+     * Rebuilds the hash table with a new size.
+     */
+    private void rehash( int size )
+    {
+        long [ ] oldKeys = keys;
+        int [ ] oldValues = values;
+        keys = new long[ size ];
+        Arrays.fill( keys, EMPTY );
+        values = new int[ size ];
+        for( int k = 0; k < oldKeys.length; k++ )
+        {
+            if( oldKeys[ k ] == EMPTY )
+                continue;
+            int i = slot( oldKeys[ k ] );
+            while( keys[ i ] != EMPTY )
+                i = ( i + 1 ) & ( size - 1 );
+            keys[ i ] = oldKeys[ k ];
+            values[ i ] = oldValues[ k ];
+        }
+    }
+}
@@ -0,0 +1,384 @@
+/**
+ * @author Ciprian (Andy) Triculescu
+ * CS310
+ * Fall 2017
+ */
+
+package imgseg;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.NoSuchElementException;
+
+/**
+ * PriorityQueue of similarities that holds more entries than fit in memory. Each entry is a distance and a pair of ids {p,q},
+ * ordered by distance, then the smaller id, then the larger id, like SimilarityQueue, but entries are not addressable and duplicates are kept.
+ * A binary heap in a fixed direct buffer takes new entries; when it is full it is written out to a scratch file as one sorted run.
+ * The root is the smaller of the heap's root and the smallest head of all runs. Runs are read through small buffers, and once there are
+ * MAX_RUNS of them they are merged into one, so memory stays fixed however many entries are queued.
+ */
+public class SpillingQueue implements Closeable
+{
+    /**
+     * Construct an empty SpillingQueue.
+     * @param capacity the number of entries kept in memory before spilling a run, at most MAX_CAPACITY (larger values are clamped).
+     * @param dir the directory for the scratch file.
+     * @throws IOException if the scratch file cannot be created.
+     */
+    public SpillingQueue( int capacity, File dir ) throws IOException
+    {
+        this.dir = dir;
+        this.capacity = Math.max( Math.min( capacity, MAX_CAPACITY ), 2 );
+        heap = ByteBuffer.allocateDirect( (int) ( 4L * ENTRY * ( this.capacity + 1 ) ) ).order( ByteOrder.nativeOrder( ) ).asIntBuffer( );
+        openSpill( );
+    }
+
+    /**
+     * Adds the pair {p,q} with the given distance.
+     * @param distance the distance between p and q, not negative.
+     * @param p the first id.
+     * @param q the second id.
+     * @throws IOException if a run cannot be written.
+     */
+    public void add( int distance, int p, int q ) throws IOException
+    {
+        if( heapSize == capacity )
+            spill( );
+        int hole = heapSize++;
+        int lo = Math.min( p, q ), hi = Math.max( p, q );
+        while( hole > 0 )
+        {
+            int parent = ( hole - 1 ) >>> 1;
+            if( compare( distance, lo, hi, parent ) >= 0 )
+                break;
+            copy( parent, hole );
+            hole = parent;
+        }
+        set( hole, distance, lo, hi );
+    }
+
+    /**
+     * @return the number of entries queued, in memory and on disk.
+     */
+    public long size( )
+    {
+        return heapSize + spilled;
+    }
+
+    public boolean isEmpty( )
+    {
+        return size( ) == 0;
+    }
+
+    /**
+     * @return the distance of the smallest entry.
+     * @throws NoSuchElementException if empty.
+     */
+    public int rootDistance( )
+    {
+        return heap.get( rootBase( ) );
+    }
+
+    /**
+     * @return the smaller id of the smallest entry.
+     * @throws NoSuchElementException if empty.
+     */
+    public int rootP( )
+    {
+        return heap.get( rootBase( ) + 1 ) ;
+    }
+
+    /**
+     * @return the larger id of the smallest entry.
+     * @throws NoSuchElementException if empty.
+     */
+    public int rootQ( )
+    {
+        return heap.get( rootBase( ) + 2 );
+    }
+
+    /**
+     * Remove the smallest entry.
+     * @throws NoSuchElementException if empty.
+     * @throws IOException if a run cannot be read.
+     */
+    public void remove( ) throws IOException
+    {
+        rootBase( );
+        if( rootInRun )
+        {
+            spilled--;
+            nextInRun( spill );
+        }
+        else
+            removeFromHeap( );
+    }
+
+    /**
+     * Deletes the scratch file.
+     */
+    public void close( ) throws IOException
+    {
+        spill.close( );
+        spillFile.delete( );
+    }
+
+    /**
+     * Ints per entry: distance, smaller id, larger id.
+     */
+    private static final int ENTRY = 3;
+    /**
+     * The most entries the in-memory heap can hold: it is one direct buffer, so its bytes, with the extra slot for a run's head, must fit in an int.
+     */
+    public static final int MAX_CAPACITY = Integer.MAX_VALUE / ( 4 * ENTRY ) - 1;
+    /**
+     * Bytes read from a run at a time.
+     */
+    private static final int RUN_BUFFER = 1 << 16;
+    /**
+     * Runs kept before they are merged into one.
+     */
+    private static final int MAX_RUNS = 64;
+
+    private final File dir;
+    private final int capacity;         // Entries the in-memory heap holds
+    private final IntBuffer heap;       // The in-memory binary heap, ENTRY ints per entry; slot capacity holds the head of a run when it is the root
+    private int heapSize;
+    private long spilled;               // Entries still unread in runs
+    private File spillFile;
+    private FileChannel spill;
+    private long spillEnd;              // Where the next run is written
+    private int runCount;               // Runs with unread entries
+    private int [ ] runHeap = new int[ MAX_RUNS + 1 ];      // Run indices in heap order of their heads
+    private boolean [ ] runLive = new boolean[ MAX_RUNS + 1 ];
+    private long [ ] runPos = new long[ MAX_RUNS + 1 ];     // File offset of the next unread byte of every run
+    private long [ ] runEnd = new long[ MAX_RUNS + 1 ];     // File offset one past the last byte of every run
+    private ByteBuffer [ ] runBuf = new ByteBuffer[ MAX_RUNS + 1 ];
+    private final ByteBuffer out = ByteBuffer.allocateDirect( RUN_BUFFER ).order( ByteOrder.nativeOrder( ) );    // Write buffer of spills and merges
+    private int [ ] headD = new int[ MAX_RUNS + 1 ], headP = new int[ MAX_RUNS + 1 ], headQ = new int[ MAX_RUNS + 1 ];
+    private boolean rootInRun;
+
+    /**
+     * Finds which of the heap root and the best run head is smaller.
+     * @return the index in heap of the root entry; a run's head is copied into the spare slot past the end of the heap and read from there.
+     */
+    private int rootBase( )
+    {
+        if( isEmpty( ) )
+            throw new NoSuchElementException( );
+        rootInRun = runCount > 0 && ( heapSize == 0 || compare( headD[ runHeap[ 0 ] ], headP[ runHeap[ 0 ] ], headQ[ runHeap[ 0 ] ], 0 ) < 0 );
+        if( !rootInRun )
+            return 0;
+        int run = runHeap[ 0 ];
+        heap.put( ENTRY * capacity, headD[ run ] );
+        heap.put( ENTRY * capacity + 1, headP[ run ] );
+        heap.put( ENTRY * capacity + 2, headQ[ run ] );
+        return ENTRY * capacity;
+    }
+
+    /**
+     * Writes the in-memory heap out as one sorted run and empties it, merging all runs into one first if there are too many.
+     */
+    private void spill( ) throws IOException
+    {
+        if( runCount == MAX_RUNS )
+            mergeRuns( );
+        long start = spillEnd;
+        long count = heapSize;
+        while( heapSize > 0 )
+        {
+            if( out.remaining( ) < 4 * ENTRY )
+                flush( );
+            out.putInt( heap.get( 0 ) ).putInt( heap.get( 1 ) ).putInt( heap.get( 2 ) );
+            removeFromHeap( );
+        }
+        flush( );
+        addRun( start, spillEnd );
+        spilled += count;
+    }
+
+    /**
+     * Merges every run into one run in a new scratch file.
+     */
+    private void mergeRuns( ) throws IOException
+    {
+        File oldFile = spillFile;
+        FileChannel old = spill;
+        openSpill( );
+        while( runCount > 0 )
+        {
+            int run = runHeap[ 0 ];
+            if( out.remaining( ) < 4 * ENTRY )
+                flush( );
+            out.putInt( headD[ run ] ).putInt( headP[ run ] ).putInt( headQ[ run ] );
+            nextInRun( old );
+        }
+        flush( );
+        old.close( );
+        oldFile.delete( );
+        addRun( 0, spillEnd );
+    }
+
+    /**
+     * Moves the best run on to its next entry, dropping it once it is used up.
+     */
+    private void nextInRun( FileChannel channel ) throws IOException
+    {
+        int run = runHeap[ 0 ];
+        if( !advance( run, channel ) )
+        {
+            runLive[ run ] = false;
+            runHeap[ 0 ] = runHeap[ --runCount ];
+        }
+        siftRun( 0 );
+    }
+
+    private void openSpill( ) throws IOException
+    {
+        spillFile = File.createTempFile( "runs", ".bin", dir );
+        spillFile.deleteOnExit( );
+        spill = new RandomAccessFile( spillFile, "rw" ).getChannel( );
+        spillEnd = 0;
+    }
+
+    private void flush( ) throws IOException
+    {
+        out.flip( );
+        while( out.hasRemaining( ) )
+            spillEnd += spill.write( out, spillEnd );
+        out.clear( );
+    }
+
+    /**
+     * Registers the run between two file offsets and reads its head.
+     */
+    private void addRun( long start, long end ) throws IOException
+    {
+        int run = 0;
+        while( runLive[ run ] )
+            run++;
+        if( runBuf[ run ] == null )
+            runBuf[ run ] = ByteBuffer.allocateDirect( RUN_BUFFER ).order( ByteOrder.nativeOrder( ) );
+        runBuf[ run ].clear( ).limit( 0 );
+        runPos[ run ] = start;
+        runEnd[ run ] = end;
+        if( !advance( run, spill ) )
+            return;
+        runLive[ run ] = true;
+        runHeap[ runCount++ ] = run;
+        int hole = runCount - 1;
+        while( hole > 0 && lessRun( runHeap[ hole ], runHeap[ ( hole - 1 ) >>> 1 ] ) )
+        {
+            swapRuns( hole, ( hole - 1 ) >>> 1 );
+            hole = ( hole - 1 ) >>> 1;
+        }
+    }
+
+    /**
+     * Reads the next entry of a run into its head.
+     * @return false if the run has no entries left.
+     */
+    private boolean advance( int run, FileChannel channel ) throws IOException
+    {
+        ByteBuffer buf = runBuf[ run ];
+        if( buf.remaining( ) < 4 * ENTRY )
+        {
+            if( runPos[ run ] >= runEnd[ run ] )
+                return false;
+            buf.compact( );
+            buf.limit( (int) Math.min( buf.capacity( ), buf.position( ) + runEnd[ run ] - runPos[ run ] ) );
+            while( buf.hasRemaining( ) )
+                runPos[ run ] += channel.read( buf, runPos[ run ] );
+            buf.flip( );
+        }
+        headD[ run ] = buf.getInt( );
+        headP[ run ] = buf.getInt( );
+        headQ[ run ] = buf.getInt( );
+        return true;
+    }
+
+    private void siftRun( int hole )
+    {
+        while( 2 * hole + 1 < runCount )
+        {
+            int child = 2 * hole + 1;
+            if( child + 1 < runCount && lessRun( runHeap[ child + 1 ], runHeap[ child ] ) )
+                child++;
+            if( !lessRun( runHeap[ child ], runHeap[ hole ] ) )
+                break;
+            swapRuns( hole, child );
+            hole = child;
+        }
+    }
+
+    private boolean lessRun( int a, int b )
+    {
+        if( headD[ a ] != headD[ b ] )
+            return headD[ a ] < headD[ b ];
+        if( headP[ a ] != headP[ b ] )
+            return headP[ a ] < headP[ b ];
+        return headQ[ a ] < headQ[ b ];
+    }
+
+    private void swapRuns( int i, int j )
+    {
+        int temp = runHeap[ i ];
+        runHeap[ i ] = runHeap[ j ];
+        runHeap[ j ] = temp;
+    }
+
+    private void removeFromHeap( )
+    {
+        int last = --heapSize;
+        if( last == 0 )
+            return;
+        int distance = heap.get( ENTRY * last ), lo = heap.get( ENTRY * last + 1 ), hi = heap.get( ENTRY * last + 2 );
+        int hole = 0;
+        while( 2 * hole + 1 < heapSize )
+        {
+            int child = 2 * hole + 1;
+            if( child + 1 < heapSize && compareSlots( child + 1, child ) < 0 )
+                child++;
+            if( compare( distance, lo, hi, child ) <= 0 )
+                break;
+            copy( child, hole );
+            hole = child;
+        }
+        set( hole, distance, lo, hi );
+    }
+
+    private int compare( int distance, int lo, int hi, int slot )
+    {
+        int b = ENTRY * slot;
+        int c = Integer.compare( distance, heap.get( b ) );
+        if( c != 0 )
+            return c;
+        c = Integer.compare( lo, heap.get( b + 1 ) );
+        return ( c != 0 ) ? c : Integer.compare( hi, heap.get( b + 2 ) );
+    }
+
+    private int compareSlots( int a, int b )
+    {
+        return compare( heap.get( ENTRY * a ), heap.get( ENTRY * a + 1 ), heap.get( ENTRY * a + 2 ), b );
+    }
+
+    private void copy( int from, int to )
+    {
+        heap.put( ENTRY * to, heap.get( ENTRY * from ) );
+        heap.put( ENTRY * to + 1, heap.get( ENTRY * from + 1 ) );
+        heap.put( ENTRY * to + 2, heap.get( ENTRY * from + 2 ) );
+    }
+
+    private void set( int slot, int distance, int lo, int hi )
+    {
+        heap.put( ENTRY * slot, distance );
+        heap.put( ENTRY * slot + 1, lo );
+        heap.put( ENTRY * slot + 2, hi );
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * @author Ciprian (Andy) Triculescu
+ * CS310
+ * Fall 2017
+ */
+
+package imgseg;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The SIMD versions of ColorMetric's batch methods, on the widest int vectors the CPU has. Only loaded when the
+ * jdk.incubator.vector module is present, so nothing else may refer to this class.
+ */
+class VectorKernels
+{
+    /**
+     * ColorMetric.pairCosts, SPECIES.length() pairs per step and the scalar loop for the rest.
+     */
+    static void pairCosts(int[] channels, int from, int offset, int count, int[] out)
+    {
+      int i = 0;
+      for(int bound = SPECIES.loopBound(count); i<bound; i+=SPECIES.length()){
+        IntVector a = IntVector.fromArray(SPECIES, channels, from+i), b = IntVector.fromArray(SPECIES, channels, from+i+offset);
+        IntVector sum = channelCost(a, b, 0).add(channelCost(a, b, 8)).add(channelCost(a, b, 16));//unrolled, so no vector crosses a loop
+        sum.intoArray(out, i);
+      }
+      for(; i<count; i++)
+        out[i] = ColorMetric.pairCost(channels[from+i], channels[from+i+offset]);
+    }
+
+    /**
+     * The cost of one channel of every pair, the one at shift.
+     */
+    private static IntVector channelCost(IntVector a, IntVector b, int shift)
+    {
+      IntVector x = a.lanewise(VectorOperators.LSHR, shift).and(0xff), y = b.lanewise(VectorOperators.LSHR, shift).and(0xff);
+      IntVector c = x.add(y).lanewise(VectorOperators.ASHR, 1);
+      IntVector dx = x.sub(c), dy = y.sub(c);
+      return dx.mul(dx).add(dy.mul(dy));
+    }
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+}
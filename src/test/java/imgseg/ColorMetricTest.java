@@ -0,0 +1,73 @@
+/**
+ * @author Ciprian (Andy) Triculescu
+ * CS310
+ * Fall 2017
+ */
+
+package imgseg;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import jdk.incubator.vector.IntVector;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the SIMD kernel of ColorMetric.pairCosts gives exactly what the scalar loop gives, for every count around
+ * the vector length, so both the vector steps and the scalar tail after loopBound are covered.
+ * Run with --add-modules jdk.incubator.vector (the pom passes it to the tests); without it the vector tests are skipped.
+ */
+public class ColorMetricTest
+{
+    @Test
+    public void vectorMatchesScalarAcrossTheTail()
+    {
+      assumeTrue(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent());
+      int lanes = IntVector.SPECIES_PREFERRED.length();
+      Random random = new Random(310);
+      int[] channels = new int[8*lanes+64];
+      for(int i=0; i<channels.length; i++)
+        channels[i] = random.nextInt()&0xffffff;
+      int[] vector = new int[channels.length], scalar = new int[channels.length];
+      for(int offset: new int[]{1, lanes-1, lanes, lanes+1, 17}){
+        for(int from=0; from<3; from++){
+          for(int count=0; count<=4*lanes+3 && from+count+offset<=channels.length; count++){
+            VectorKernels.pairCosts(channels, from, offset, count, vector);
+            for(int i=0; i<count; i++)
+              scalar[i] = ColorMetric.pairCost(channels[from+i], channels[from+i+offset]);
+            assertArrayEquals(Arrays.copyOf(scalar, count), Arrays.copyOf(vector, count),
+              "offset="+offset+" from="+from+" count="+count);
+          }
+        }
+      }
+    }
+
+    @Test
+    public void vectorMatchesScalarOnExtremes()
+    {
+      assumeTrue(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent());
+      int[] channels = {0x000000, 0xffffff, 0xff00ff, 0x00ff00, 0x010101, 0xfefefe, 0x7f8081, 0x808080};
+      int[] extremes = new int[4*channels.length];
+      for(int i=0; i<extremes.length; i++)
+        extremes[i] = channels[(i*5)%channels.length];
+      int count = extremes.length-1;
+      int[] vector = new int[count];
+      VectorKernels.pairCosts(extremes, 0, 1, count, vector);
+      for(int i=0; i<count; i++)
+        assertEquals(ColorMetric.pairCost(extremes[i], extremes[i+1]), vector[i], "pair "+i);
+    }
+
+    @Test
+    public void pairCostIsTheSingletonMergeCost()
+    {
+      //two single pixels x and y merge to c=(x+y)>>1 per channel, and cost (x-c)^2+(y-c)^2 summed over the channels
+      assertEquals(0, ColorMetric.pairCost(0x123456, 0x123456));
+      assertEquals(3*(128*128+127*127), ColorMetric.pairCost(0x000000, 0xffffff));
+      assertEquals(1, ColorMetric.pairCost(0x000000, 0x000001));
+    }
+}
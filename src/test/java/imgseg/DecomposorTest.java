@@ -0,0 +1,57 @@
+/**
+ * @author Ciprian (Andy) Triculescu
+ * CS310
+ * Fall 2017
+ */
+
+package imgseg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that segment(K) leaves exactly K regions, in particular when the pre-merge (on by default) could join whole
+ * images of one color in a single pixel's unions.
+ */
+public class DecomposorTest
+{
+    @Test
+    public void uniformImageKeepsKRegions()
+    {
+      for(int[] size: new int[][]{{3, 2}, {64, 2}, {16, 16}}){
+        for(int connectivity: new int[]{4, 8}){
+          Decomposor d = segment(new BufferedImage(size[0], size[1], BufferedImage.TYPE_INT_RGB), connectivity, 2);
+          assertEquals(2, d.getNumRegions(), size[0]+"x"+size[1]+" connectivity="+connectivity);
+        }
+      }
+    }
+
+    @Test
+    public void twoColorImagesKeepKRegions()
+    {
+      Random random = new Random(310);
+      for(int t=0; t<200; t++){
+        int width = 2+random.nextInt(8), height = 2+random.nextInt(8);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for(int h=0; h<height; h++)
+          for(int w=0; w<width; w++)
+            image.setRGB(w, h, random.nextBoolean() ? 0xff0000 : 0x0000ff);
+        int K = 2+random.nextInt(Math.min(5, width*height-1));
+        for(int connectivity: new int[]{4, 8})
+          assertEquals(K, segment(image, connectivity, K).getNumRegions(), width+"x"+height+" K="+K+" connectivity="+connectivity);
+      }
+    }
+
+    private static Decomposor segment(BufferedImage image, int connectivity, int K)
+    {
+      Decomposor d = new Decomposor(image, "test");
+      d.setVerbose(false);
+      d.setConnectivity(connectivity);
+      d.segment(K);
+      return d;
+    }
+}
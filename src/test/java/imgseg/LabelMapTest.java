@@ -0,0 +1,105 @@
+/**
+ * @author Ciprian (Andy) Triculescu
+ * CS310
+ * Fall 2017
+ */
+
+package imgseg;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Writes label maps and reads them back through the mapping, on each side of the 256 and 65536 region boundaries where
+ * labels go from 1 to 2 to 4 bytes, with runs that go on across rows and files larger than the write buffer.
+ */
+public class LabelMapTest
+{
+    @Test
+    public void labelBytesBoundaries()
+    {
+      assertEquals(1, LabelMap.labelBytes(1));
+      assertEquals(1, LabelMap.labelBytes(256));
+      assertEquals(2, LabelMap.labelBytes(257));
+      assertEquals(2, LabelMap.labelBytes(65536));
+      assertEquals(4, LabelMap.labelBytes(65537));
+    }
+
+    @Test
+    public void writeThenRead() throws IOException
+    {
+      for(int regions: new int[]{1, 255, 256, 257, 65535, 65536, 65537})
+        roundTrip(regions, 3);
+    }
+
+    @Test
+    public void longRunsAcrossRows() throws IOException
+    {
+      roundTrip(2, 1000);//every run is longer than a row
+    }
+
+    /**
+     * Writes a map of regions regions, each made of runs of run pixels in turn, reads it back and checks every field.
+     */
+    private static void roundTrip(int regions, int run) throws IOException
+    {
+      int width = 301, n = 2*run*regions, height = (n+width-1)/width;
+      n = width*height;
+      int[] labels = new int[n];
+      for(int id=0; id<n; id++)
+        labels[id] = (id/run)%regions;
+      int[] roots = new int[regions], colors = new int[regions], sizes = new int[regions];
+      int[] minX = new int[regions], minY = new int[regions], maxX = new int[regions], maxY = new int[regions];
+      for(int r=0; r<regions; r++){
+        roots[r] = r*run;
+        colors[r] = 0xff000000|(r*0x9e3779b1);//only the low 24 bits are kept
+        minX[r] = width;
+        minY[r] = height;
+        maxX[r] = -1;
+        maxY[r] = -1;
+      }
+      int runs = 0;
+      for(int id=0; id<n; id++){
+        int r = labels[id], x = id%width, y = id/width;
+        sizes[r]++;
+        minX[r] = Math.min(minX[r], x);
+        minY[r] = Math.min(minY[r], y);
+        maxX[r] = Math.max(maxX[r], x);
+        maxY[r] = Math.max(maxY[r], y);
+        if(id == 0 || labels[id-1] != r)
+          runs++;
+      }
+
+      File file = File.createTempFile("labels", ".isl");
+      try
+      {
+        LabelMap.write(file, width, height, labels, roots, colors);
+        assertEquals(24L+28L*regions+(LabelMap.labelBytes(regions)+4L)*runs, file.length(), "file size with "+regions+" regions");
+        LabelMap map = new LabelMap(file);
+        assertEquals(width, map.getWidth());
+        assertEquals(height, map.getHeight());
+        assertEquals(regions, map.getNumRegions());
+        assertEquals(runs, map.getNumRuns(), "runs with "+regions+" regions");
+        for(int r=0; r<regions; r++){
+          String region = "region "+r+" of "+regions;
+          assertEquals(roots[r], map.getRoot(r), region);
+          assertEquals(sizes[r], map.getSize(r), region);
+          assertEquals(colors[r]&0xffffff, map.getColor(r), region);
+          assertEquals(minX[r], map.getMinX(r), region);
+          assertEquals(minY[r], map.getMinY(r), region);
+          assertEquals(maxX[r], map.getMaxX(r), region);
+          assertEquals(maxY[r], map.getMaxY(r), region);
+        }
+        assertArrayEquals(labels, map.getLabels(null), "labels with "+regions+" regions");
+      }
+      finally
+      {
+        file.delete();
+      }
+    }
+}
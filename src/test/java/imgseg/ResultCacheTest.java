@@ -0,0 +1,145 @@
+/**
+ * @author Ciprian (Andy) Triculescu
+ * CS310
+ * Fall 2017
+ */
+
+package imgseg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that ResultCache reads back what it stores, and that an entry which does not hold together is a miss and is deleted.
+ */
+public class ResultCacheTest
+{
+    @BeforeEach
+    public void createDir() throws IOException
+    {
+      dir = Files.createTempDirectory("imgseg-cache").toFile();
+      cache = new ResultCache(dir, 1<<20);
+    }
+
+    @AfterEach
+    public void deleteDir()
+    {
+      for(File file: dir.listFiles())
+        file.delete();
+      dir.delete();
+    }
+
+    @Test
+    public void storeThenLoad()
+    {
+      for(int count: new int[]{1, 3, 255, 256, 257, 300}){
+        IntDisjointSets ds = regions(N, count);
+        cache.store(KEY+count, ds, N);
+        ResultCache.Entry entry = cache.load(KEY+count, N);
+        assertNotNull(entry, "entry with "+count+" regions");
+        assertEquals(count, entry.roots.length, "regions");
+        for(int r=0; r<count; r++)
+          assertEquals(r, entry.labels[entry.roots[r]], "label of root "+r);
+        for(int id=0; id<N; id++)
+          assertEquals(ds.find(id), entry.roots[entry.labels[id]], "root of pixel "+id);
+      }
+      assertNull(cache.load("missing", N), "key never stored");
+    }
+
+    @Test
+    public void wrongSizeIsAMiss()
+    {
+      cache.store(KEY, regions(N, 3), N);
+      assertNull(cache.load(KEY, N+1), "entry for another number of pixels");
+      assertFalse(cache.contains(KEY), "bad entry left in place");
+    }
+
+    @Test
+    public void truncatedEntryIsAMiss() throws IOException
+    {
+      cache.store(KEY, regions(N, 3), N);
+      File file = new File(dir, KEY+".seg");
+      byte[] bytes = Files.readAllBytes(file.toPath());
+      Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length/2));
+      assertNull(cache.load(KEY, N), "truncated entry");
+      assertFalse(file.exists(), "truncated entry left in place");
+      cache.store(KEY, regions(N, 3), N);
+      assertNotNull(cache.load(KEY, N), "entry stored again");
+    }
+
+    @Test
+    public void labelOutOfRangeIsAMiss() throws IOException
+    {
+      cache.store(KEY, regions(N, 3), N);
+      File file = new File(dir, KEY+".seg");
+      byte[] raw = inflate(file);
+      raw[raw.length-1] = 3;//the last pixel's label, one byte with 3 regions
+      deflate(file, raw);
+      assertNull(cache.load(KEY, N), "label out of range");
+      assertFalse(file.exists(), "bad entry left in place");
+    }
+
+    @Test
+    public void rootOfAnotherRegionIsAMiss() throws IOException
+    {
+      cache.store(KEY, regions(N, 3), N);
+      File file = new File(dir, KEY+".seg");
+      byte[] raw = inflate(file);
+      System.arraycopy(raw, 16, raw, 12, 4);//the first region's root is now the second's, in range but labeled 1
+      deflate(file, raw);
+      assertNull(cache.load(KEY, N), "root labeled with another region");
+      assertFalse(file.exists(), "bad entry left in place");
+    }
+
+    /**
+     * @return A disjoint set of n ids in count regions, id in region id%count.
+     */
+    private static IntDisjointSets regions(int n, int count)
+    {
+      IntDisjointSets ds = new IntDisjointSets(n);
+      for(int id=count; id<n; id++)
+        ds.union(ds.find(id%count), ds.find(id));
+      return ds;
+    }
+
+    private static byte[] inflate(File file) throws IOException
+    {
+      try(InputStream in = new InflaterInputStream(new FileInputStream(file)))
+      {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        in.transferTo(out);
+        return out.toByteArray();
+      }
+    }
+
+    private static void deflate(File file, byte[] raw) throws IOException
+    {
+      try(OutputStream out = new DeflaterOutputStream(new FileOutputStream(file)))
+      {
+        out.write(raw);
+      }
+    }
+
+    private static final int N = 1000;
+    private static final String KEY = "0123456789abcdef";//keys are hashes, and a temporary file needs a prefix of at least 3
+    private File dir;
+    private ResultCache cache;
+}
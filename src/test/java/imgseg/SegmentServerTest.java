@@ -0,0 +1,153 @@
+/**
+ * @author Ciprian (Andy) Triculescu
+ * CS310
+ * Fall 2017
+ */
+
+package imgseg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Starts a SegmentServer on a loopback port with one worker and no queue, and checks its answers: 200 for an image it
+ * segments, 429 while that one worker is busy, 413 for an image over the pixel limit and 415 for a body that is no image,
+ * and that warming up does not write to the result cache.
+ */
+public class SegmentServerTest
+{
+    @Test
+    public void answersOverLoopback() throws Exception
+    {
+      final CountDownLatch started = new CountDownLatch(1), release = new CountDownLatch(1);
+      final AtomicBoolean hold = new AtomicBoolean();//only requests wait, not the warm up
+      SegmentServer server = new SegmentServer(0, 1, 0, 30000){
+        protected void configure(Decomposor seg)
+        {
+          if(!hold.get()) return;
+          started.countDown();
+          try
+          {
+            release.await();
+          }
+          catch(InterruptedException e)
+          {
+            Thread.currentThread().interrupt();
+          }
+        }
+      };
+      server.setMaxPixels(64*64);
+      server.start();
+      ExecutorService client = Executors.newSingleThreadExecutor();
+      try
+      {
+        final int port = server.getPort();
+        final byte[] small = png(32, 32);
+        hold.set(true);
+        Future<Integer> first = client.submit(new Callable<Integer>(){
+          public Integer call() throws IOException {
+            return post(port, "k=4", small);
+          }
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS), "the first request never reached the worker");
+        assertEquals(429, post(port, "k=4", small), "second request while the only worker is busy");
+        release.countDown();
+        assertEquals(200, (int)first.get(10, TimeUnit.SECONDS), "first request");
+        hold.set(false);
+        assertEquals(200, post(port, "k=4", small), "request after the worker is free again");
+        assertEquals(413, post(port, "k=4", png(128, 128)), "image over the pixel limit");
+        assertEquals(415, post(port, "k=4", new byte[]{1, 2, 3}), "body that is no image");
+        assertEquals(400, post(port, "k=1", small), "bad k");
+      }
+      finally
+      {
+        release.countDown();
+        client.shutdownNow();
+        server.stop();
+      }
+    }
+
+    @Test
+    public void warmUpLeavesTheCacheAlone() throws Exception
+    {
+      File dir = Files.createTempDirectory("imgseg-cache").toFile();
+      final ResultCache cache = new ResultCache(dir, 1<<20);
+      SegmentServer server = new SegmentServer(0, 1, 0, 30000){
+        protected void configure(Decomposor seg)
+        {
+          seg.setCache(cache);
+        }
+      };
+      server.start();
+      try
+      {
+        assertEquals(0, dir.list().length, "entries written by the warm up");
+      }
+      finally
+      {
+        server.stop();
+        for(File file: dir.listFiles())
+          file.delete();
+        dir.delete();
+      }
+    }
+
+    /**
+     * POSTs body to /segment with the given query and reads the whole reply.
+     * @return The status code.
+     */
+    private static int post(int port, String query, byte[] body) throws IOException
+    {
+      HttpURLConnection connection = (HttpURLConnection)new URL("http://127.0.0.1:"+port+"/segment?"+query).openConnection();
+      connection.setRequestMethod("POST");
+      connection.setDoOutput(true);
+      try(OutputStream out = connection.getOutputStream())
+      {
+        out.write(body);
+      }
+      int code = connection.getResponseCode();
+      try
+      {
+        (code == 200 ? connection.getInputStream() : connection.getErrorStream()).readAllBytes();
+      }
+      finally
+      {
+        connection.disconnect();
+      }
+      return code;
+    }
+
+    /**
+     * @return A PNG of a width x height image with a few colored stripes.
+     */
+    private static byte[] png(int width, int height) throws IOException
+    {
+      BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+      for(int y=0; y<height; y++)
+        for(int x=0; x<width; x++)
+          image.setRGB(x, y, (x/8%2 == 0) ? 0x204080 : 0xc08020+y);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      ImageIO.write(image, "png", out);
+      return out.toByteArray();
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * @author Ciprian (Andy) Triculescu
+ * CS310
+ * Fall 2017
+ */
+
+package imgseg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks SimilarityQueue against a java.util.PriorityQueue of {distance, smaller id, larger id} over random sequences of
+ * inserts, distance changes both ways, removals of any pair and pops. Ids come from a small range so pairs are updated and
+ * removed often, which exercises the decrease and increase key paths and the backward shift of the hash table's deletes,
+ * and the queue starts small so the heap and the table both grow on the way.
+ */
+public class SimilarityQueueTest
+{
+    @Test
+    public void matchesPriorityQueue()
+    {
+      for(int seed=0; seed<20; seed++)
+        run(new Random(seed), 2+seed*3, 4000);
+    }
+
+    @Test
+    public void appendThenBuildHeap()
+    {
+      Random random = new Random(310);
+      for(int round=0; round<20; round++){
+        SimilarityQueue queue = new SimilarityQueue(1);
+        Reference reference = new Reference();
+        for(int i=0; i<500; i++){
+          int p = random.nextInt(30), q = random.nextInt(30), distance = random.nextInt(50);
+          if(p == q) continue;
+          queue.append(distance, p, q);//a pair appended twice only keeps its last distance
+          reference.put(distance, p, q);
+        }
+        queue.buildHeap();
+        drain(queue, reference, "round "+round);
+      }
+    }
+
+    /**
+     * Runs steps random operations with ids below ids on both queues, comparing them after every one, then drains both.
+     */
+    private static void run(Random random, int ids, int steps)
+    {
+      SimilarityQueue queue = new SimilarityQueue(1);
+      Reference reference = new Reference();
+      for(int step=0; step<steps; step++){
+        String at = "ids="+ids+" step="+step;
+        int p = random.nextInt(ids), q = random.nextInt(ids);
+        int op = random.nextInt(10);
+        if(op < 5){
+          if(p == q) continue;
+          int distance = random.nextInt(64);//small, so ties fall back on the ids
+          queue.add(distance, p, q);
+          reference.put(distance, p, q);
+        }
+        else if(op < 7){
+          assertEquals(reference.remove(p, q), queue.remove(p, q), at+" remove "+p+","+q);
+        }
+        else if(op < 9){
+          if(reference.queue.isEmpty()) continue;
+          long[] root = reference.queue.peek();
+          reference.remove((int)root[1], (int)root[2]);
+          queue.remove();
+        }
+        else{
+          assertEquals(reference.pairs.containsKey(Reference.key(p, q)), queue.contains(p, q), at+" contains "+p+","+q);
+        }
+        assertEquals(reference.queue.size(), queue.size(), at+" size");
+        if(!reference.queue.isEmpty())
+          assertRoot(reference.queue.peek(), queue, at);
+      }
+      for(long key: reference.pairs.keySet())
+        assertTrue(queue.contains((int)(key>>>32), (int)key), "ids="+ids+" queued pair "+(key>>>32)+","+(int)key);
+      drain(queue, reference, "ids="+ids);
+    }
+
+    private static void drain(SimilarityQueue queue, Reference reference, String at)
+    {
+      while(!reference.queue.isEmpty()){
+        long[] root = reference.queue.poll();
+        assertRoot(root, queue, at+" draining");
+        queue.remove();
+      }
+      assertTrue(queue.isEmpty(), at+" left over");
+      assertFalse(queue.contains(0, 1), at+" pair still queued after draining");
+    }
+
+    private static void assertRoot(long[] root, SimilarityQueue queue, String at)
+    {
+      assertEquals((int)root[0], queue.rootDistance(), at+" root distance");
+      assertEquals((int)root[1], queue.rootP(), at+" root p");
+      assertEquals((int)root[2], queue.rootQ(), at+" root q");
+    }
+
+    /**
+     * The reference: a PriorityQueue of {distance, smaller id, larger id}, and the entry of every queued pair so it can be replaced.
+     */
+    private static class Reference
+    {
+      final PriorityQueue<long[]> queue = new PriorityQueue<long[]>(new Comparator<long[]>(){
+        public int compare(long[] a, long[] b) {
+          for(int i=0; i<3; i++)
+            if(a[i] != b[i])
+              return Long.compare(a[i], b[i]);
+          return 0;
+        }
+      });
+      final Map<Long, long[]> pairs = new HashMap<Long, long[]>();
+
+      static long key(int p, int q)
+      {
+        return (long)Math.min(p, q)<<32 | Math.max(p, q);
+      }
+
+      void put(int distance, int p, int q)
+      {
+        remove(p, q);
+        long[] entry = {distance, Math.min(p, q), Math.max(p, q)};
+        queue.add(entry);
+        pairs.put(key(p, q), entry);
+      }
+
+      boolean remove(int p, int q)
+      {
+        long[] entry = pairs.remove(key(p, q));
+        return entry != null && queue.remove(entry);
+      }
+    }
+}